@@ -3,6 +3,7 @@ package com.ktar5.jazzy.editor;
 import com.ktar5.jazzy.editor.gui.Root;
 import com.ktar5.jazzy.editor.tilemap.MapManager;
 import com.ktar5.jazzy.editor.tileset.TilesetManager;
+import com.ktar5.jazzy.editor.util.BackgroundSaver;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -25,6 +26,7 @@ public class Main extends Application {
         
         //this makes all stages close and the app exit when the main stage is closed
         primaryStage.setOnCloseRequest(e -> {
+            BackgroundSaver.get().shutdown();
             Platform.exit();
             System.exit(0);
         });
@@ -43,6 +45,10 @@ public class Main extends Application {
         
         //Initialize window
         window = scene.getWindow();
+        
+        //Offer to restore maps that weren't saved before the last exit, then keep journaling unsaved maps
+        MapManager.get().restoreRecoveredMaps();
+        MapManager.get().startAutosave();
     }
     
 }
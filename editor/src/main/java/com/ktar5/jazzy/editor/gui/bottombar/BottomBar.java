@@ -3,6 +3,7 @@ package com.ktar5.jazzy.editor.gui.bottombar;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
@@ -13,6 +14,7 @@ import javafx.scene.text.Font;
 public class BottomBar extends HBox {
     private Label left;
     private Label right;
+    private ProgressBar progress;
     
     public BottomBar() {
         super();
@@ -29,6 +31,12 @@ public class BottomBar extends HBox {
         center.prefHeight(-1);
         center.prefWidth(-1);
         
+        progress = new ProgressBar();
+        progress.setPrefWidth(100);
+        progress.setVisible(false);
+        progress.managedProperty().bind(progress.visibleProperty());
+        HBox.setHgrow(progress, Priority.NEVER);
+        
         right = new Label("Right status");
         right.maxWidth(-1.0);
         // ? right.maxHeight(Double.MAX_VALUE);
@@ -36,6 +44,7 @@ public class BottomBar extends HBox {
         right.setTextFill(new Color(.625, .625, .625, 1));
         right.setFont(Font.font(11));
         
+        this.getChildren().addAll(left, center, progress, right);
         this.setAlignment(Pos.CENTER_LEFT);
         this.setSpacing(5.0);
         
@@ -52,5 +61,13 @@ public class BottomBar extends HBox {
         right.setText(text);
     }
     
+    /**
+     * Shows the text next to a progress bar that is only visible while work is running.
+     */
+    public void setProgress(String text, boolean running) {
+        right.setText(text);
+        progress.setVisible(running);
+    }
+    
     
 }
@@ -0,0 +1,163 @@
+package com.ktar5.jazzy.editor.gui.centerview;
+
+import javafx.scene.canvas.Canvas;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the canvases of chunks that scrolled out of view, so that panning back to them doesn't paint them again.
+ * <p>
+ * Canvases are keyed by the layer they belong to, their position and their level of detail, and are evicted
+ * least recently used first once the memory they take up goes over the budget. A canvas is removed from the
+ * cache while it is on screen, so every cached canvas must be invalidated when a cell in it changes.
+ */
+@Getter
+public class ChunkCache {
+    /**
+     * The default memory budget of a cache, in bytes
+     */
+    public static final long DEFAULT_BUDGET = 128L << 20;
+    
+    private long budget;
+    //Bytes taken up by the pixels of the cached canvases
+    private long size;
+    private long hits, misses, evictions;
+    @Getter(AccessLevel.NONE)
+    private final LinkedHashMap<Key, Canvas> canvases = new LinkedHashMap<>(64, 0.75f, true);
+    
+    public ChunkCache(long budget) {
+        this.budget = budget;
+    }
+    
+    /**
+     * Changes the memory budget, evicting canvases right away if the cache is over it.
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+    
+    /**
+     * Adds the canvas of a chunk that is no longer on screen. The canvas must not be in the scene graph anymore.
+     *
+     * @param owner the layer the chunk belongs to
+     */
+    public void put(Object owner, int chunkX, int chunkY, int level, Canvas canvas) {
+        Canvas previous = canvases.put(new Key(owner, chunkX, chunkY, level), canvas);
+        if (previous != null) {
+            size -= sizeOf(previous);
+        }
+        size += sizeOf(canvas);
+        evict();
+    }
+    
+    /**
+     * Removes the canvas of a chunk from the cache, so that it can be shown again.
+     *
+     * @return the canvas, or null if the chunk isn't cached
+     */
+    public Canvas take(Object owner, int chunkX, int chunkY, int level) {
+        Canvas canvas = canvases.remove(new Key(owner, chunkX, chunkY, level));
+        if (canvas == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        size -= sizeOf(canvas);
+        return canvas;
+    }
+    
+    /**
+     * Drops the canvas of a chunk that changed, if it is cached.
+     */
+    public void invalidate(Object owner, int chunkX, int chunkY, int level) {
+        Canvas canvas = canvases.remove(new Key(owner, chunkX, chunkY, level));
+        if (canvas != null) {
+            size -= sizeOf(canvas);
+        }
+    }
+    
+    /**
+     * Drops every canvas that belongs to the given owner.
+     */
+    public void invalidateAll(Object owner) {
+        Iterator<Map.Entry<Key, Canvas>> iterator = canvases.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Canvas> entry = iterator.next();
+            if (entry.getKey().owner == owner) {
+                size -= sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * @return the amount of canvases in the cache
+     */
+    public int getCount() {
+        return canvases.size();
+    }
+    
+    /**
+     * @return the fraction of lookups that found a cached canvas, or 0 if there weren't any
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+    
+    /**
+     * Resets the hit, miss and eviction counters to zero.
+     */
+    public void resetStatistics() {
+        hits = misses = evictions = 0;
+    }
+    
+    private void evict() {
+        Iterator<Canvas> iterator = canvases.values().iterator();
+        while (size > budget && iterator.hasNext()) {
+            size -= sizeOf(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+    }
+    
+    private static long sizeOf(Canvas canvas) {
+        //Canvases are backed by a 32 bit texture
+        return (long) Math.ceil(canvas.getWidth()) * (long) Math.ceil(canvas.getHeight()) * 4;
+    }
+    
+    private static final class Key {
+        private final Object owner;
+        private final int chunkX, chunkY, level;
+        
+        private Key(Object owner, int chunkX, int chunkY, int level) {
+            this.owner = owner;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.level = level;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return owner == key.owner && chunkX == key.chunkX && chunkY == key.chunkY && level == key.level;
+        }
+        
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(owner);
+            result = 31 * result + chunkX;
+            result = 31 * result + chunkY;
+            result = 31 * result + level;
+            return result;
+        }
+    }
+    
+}
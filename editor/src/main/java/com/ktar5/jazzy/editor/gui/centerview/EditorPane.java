@@ -3,10 +3,16 @@ package com.ktar5.jazzy.editor.gui.centerview;
 import com.ktar5.jazzy.editor.gui.utils.ResizableGrid;
 import com.ktar5.jazzy.editor.gui.utils.ZoomablePannablePane;
 import com.ktar5.jazzy.editor.util.ClipUtil;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.util.Pair;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 @Getter
@@ -14,6 +20,11 @@ public class EditorPane extends Pane {
     private final ZoomablePannablePane zoomablePannablePane;
     private Pane viewport;
     private ResizableGrid resizableGrid;
+    private final RepaintTracker repaintTracker = new RepaintTracker();
+    private final ChunkCache chunkCache = new ChunkCache(ChunkCache.DEFAULT_BUDGET);
+    //The part of the viewport that is on screen, in the coordinates of the viewport
+    @Getter(AccessLevel.NONE)
+    private final ReadOnlyObjectWrapper<Bounds> visibleBounds = new ReadOnlyObjectWrapper<>(new BoundingBox(0, 0, 0, 0));
     
     public EditorPane(int x, int y, int gridXSpacing, int gridYSpacing) {
         super();
@@ -34,6 +45,17 @@ public class EditorPane extends Pane {
         this.getChildren().addAll(zoomablePannablePane, resizableGrid);
         
         ClipUtil.clip(this);
+        
+        //Panning and zooming only ever change the transform of the pan and zoom pane
+        ChangeListener<Object> updateVisibleBounds = (observable, oldValue, newValue) -> updateVisibleBounds();
+        ZoomablePannablePane.PanAndZoomPane panAndZoomPane = zoomablePannablePane.getPanAndZoomPane();
+        panAndZoomPane.translateXProperty().addListener(updateVisibleBounds);
+        panAndZoomPane.translateYProperty().addListener(updateVisibleBounds);
+        panAndZoomPane.scaleXProperty().addListener(updateVisibleBounds);
+        panAndZoomPane.scaleYProperty().addListener(updateVisibleBounds);
+        panAndZoomPane.layoutXProperty().addListener(updateVisibleBounds);
+        panAndZoomPane.layoutYProperty().addListener(updateVisibleBounds);
+        this.layoutBoundsProperty().addListener(updateVisibleBounds);
     }
     
     public EditorPane(Pair<Pair<Integer, Integer>, Pair<Integer, Integer>> dimensions) {
@@ -41,4 +63,18 @@ public class EditorPane extends Pane {
                 dimensions.getValue().getKey(), dimensions.getValue().getValue());
     }
     
+    /**
+     * @return the part of the viewport that is currently on screen, in the coordinates of the viewport
+     */
+    public ReadOnlyObjectProperty<Bounds> visibleBoundsProperty() {
+        return visibleBounds.getReadOnlyProperty();
+    }
+    
+    private void updateVisibleBounds() {
+        Bounds bounds = viewport.sceneToLocal(localToScene(getLayoutBounds()));
+        if (bounds != null && !bounds.equals(visibleBounds.get())) {
+            visibleBounds.set(bounds);
+        }
+    }
+    
 }
@@ -0,0 +1,89 @@
+package com.ktar5.jazzy.editor.gui.centerview;
+
+import javafx.animation.AnimationTimer;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the repaints that are requested in an editor pane, and runs them together once per pulse,
+ * right before the next frame is rendered. Edits made between two frames are therefore painted once,
+ * no matter how many of them there were.
+ * <p>
+ * Targets keep track of their own dirty regions, this only decides when they are repainted, and counts
+ * how many cells were repainted per frame.
+ */
+@Getter
+public class RepaintTracker {
+    @Getter(AccessLevel.NONE)
+    private final Set<Target> pending = new LinkedHashSet<>();
+    @Getter(AccessLevel.NONE)
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+    
+    //Cells repainted in the last frame that had anything to repaint
+    private int lastFrameCells;
+    //The most cells repainted in a single frame
+    private int maxFrameCells;
+    private long totalCells;
+    //Frames that had anything to repaint
+    private long frames;
+    
+    /**
+     * Repaints the dirty regions of the target before the next frame.
+     * Must be called on the JavaFX application thread.
+     */
+    public void schedule(Target target) {
+        if (pending.add(target) && pending.size() == 1) {
+            timer.start();
+        }
+    }
+    
+    /**
+     * Repaints every pending target right away.
+     */
+    public void flush() {
+        timer.stop();
+        if (pending.isEmpty()) {
+            return;
+        }
+        //Repainting may schedule targets again, those are repainted in the next frame
+        List<Target> targets = new ArrayList<>(pending);
+        pending.clear();
+        
+        int cells = 0;
+        for (Target target : targets) {
+            cells += target.repaintDirty();
+        }
+        lastFrameCells = cells;
+        maxFrameCells = Math.max(maxFrameCells, cells);
+        totalCells += cells;
+        frames++;
+    }
+    
+    /**
+     * Resets every counter to zero.
+     */
+    public void resetCounters() {
+        lastFrameCells = maxFrameCells = 0;
+        totalCells = frames = 0;
+    }
+    
+    public interface Target {
+        /**
+         * Repaints everything that changed since the last call.
+         *
+         * @return the amount of cells that were repainted
+         */
+        int repaintDirty();
+    }
+    
+}
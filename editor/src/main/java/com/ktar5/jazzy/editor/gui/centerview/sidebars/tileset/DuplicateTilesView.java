@@ -0,0 +1,57 @@
+package com.ktar5.jazzy.editor.gui.centerview.sidebars.tileset;
+
+import com.ktar5.jazzy.editor.tileset.BaseTileset;
+import com.ktar5.jazzy.editor.tileset.DeduplicatedTiles;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.CornerRadii;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import lombok.Getter;
+
+/**
+ * Lists the tiles of a tileset that are empty or have the same pixels as an earlier tile.
+ */
+@Getter
+public class DuplicateTilesView extends VBox {
+    private Label summary;
+    private ListView<String> duplicates;
+    
+    public DuplicateTilesView() {
+        super(5);
+        
+        this.setPadding(new Insets(5));
+        this.setBackground(new Background(new BackgroundFill(Color.GREY, CornerRadii.EMPTY, Insets.EMPTY)));
+        
+        summary = new Label();
+        summary.setWrapText(true);
+        duplicates = new ListView<>();
+        VBox.setVgrow(duplicates, Priority.ALWAYS);
+        
+        this.getChildren().addAll(summary, duplicates);
+    }
+    
+    public void setTileset(BaseTileset tileset) {
+        duplicates.getItems().clear();
+        DeduplicatedTiles tiles = tileset.getTiles();
+        if (tiles == null) {
+            summary.setText("The image of the tileset couldn't be loaded");
+            return;
+        }
+        
+        summary.setText(tiles.getTileCount() + " tiles, " + tiles.getUniqueCount() + " unique, "
+                + tiles.getEmptyCount() + " empty");
+        for (int id = 0; id < tiles.getTileCount(); id++) {
+            if (tiles.isEmpty(id)) {
+                duplicates.getItems().add("Tile " + id + " is empty");
+            } else if (tiles.isDuplicate(id)) {
+                duplicates.getItems().add("Tile " + id + " is a duplicate of tile " + tiles.getOriginalId(id));
+            }
+        }
+    }
+    
+}
@@ -6,14 +6,28 @@ import com.ktar5.jazzy.editor.gui.utils.ResizableGrid;
 import com.ktar5.jazzy.editor.gui.utils.TilesetImageView;
 import com.ktar5.jazzy.editor.gui.utils.ZoomablePannablePane;
 import com.ktar5.jazzy.editor.tileset.BaseTileset;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Bounds;
 import javafx.scene.Node;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.mini2Dx.gdx.utils.IntMap;
 
+import java.util.ArrayList;
+
+/**
+ * Shows the tiles of a tileset to pick from.
+ * <p>
+ * Only the tiles in the visible part of the palette get a view. Views of tiles that scroll out of it are hidden
+ * and reused for the tiles that scroll into it, so the amount of views is bounded by the size of the palette
+ * instead of the size of the tileset. The views are kept while the tileset stays the same, so selecting the tab
+ * again doesn't rebuild the palette.
+ */
 @Getter
 public class TilesetSidebarViewPane extends Pane {
     private Pane viewport;
@@ -21,12 +35,21 @@ public class TilesetSidebarViewPane extends Pane {
     
     private BaseTileset tileset;
     
+    @Getter(AccessLevel.NONE)
+    private final ZoomablePannablePane zoomablePannablePane;
+    //Views of the tiles in the visible part of the palette, keyed by tile id
+    @Getter(AccessLevel.NONE)
+    private final IntMap<TilesetImageView> shownTiles = new IntMap<>();
+    //Hidden views, reused for the tiles that scroll into view
+    @Getter(AccessLevel.NONE)
+    private final ArrayList<TilesetImageView> freeViews = new ArrayList<>();
+    
     public TilesetSidebarViewPane() {
         viewport = new Pane();
         
         VBox.setVgrow(this, Priority.ALWAYS);
         
-        ZoomablePannablePane zoomablePannablePane = new ZoomablePannablePane(viewport);
+        zoomablePannablePane = new ZoomablePannablePane(viewport);
         resizableGrid = new ResizableGrid(zoomablePannablePane.getPanAndZoomPane(), zoomablePannablePane.getZoomProperty(),
                 1, 1);
         resizableGrid.setVisible(false);
@@ -44,9 +67,25 @@ public class TilesetSidebarViewPane extends Pane {
                     view.getTileId(), view.getTileset()));
         });
         
+        //Panning and zooming only ever change the transform of the pan and zoom pane
+        ChangeListener<Object> updateVisibleTiles = (observable, oldValue, newValue) -> updateVisibleTiles();
+        ZoomablePannablePane.PanAndZoomPane panAndZoomPane = zoomablePannablePane.getPanAndZoomPane();
+        panAndZoomPane.translateXProperty().addListener(updateVisibleTiles);
+        panAndZoomPane.translateYProperty().addListener(updateVisibleTiles);
+        panAndZoomPane.scaleXProperty().addListener(updateVisibleTiles);
+        panAndZoomPane.scaleYProperty().addListener(updateVisibleTiles);
+        panAndZoomPane.layoutXProperty().addListener(updateVisibleTiles);
+        panAndZoomPane.layoutYProperty().addListener(updateVisibleTiles);
+        this.layoutBoundsProperty().addListener(updateVisibleTiles);
     }
     
     public void setTileset(BaseTileset tileset) {
+        if (tileset == this.tileset) {
+            //The palette of the tileset is still there, only the tiles that came into view need a view
+            updateVisibleTiles();
+            return;
+        }
+        hideAllTiles();
         this.tileset = tileset;
         viewport.setPrefSize(tileset.getDimensionX(), tileset.getDimensionY());
         resizableGrid.setMaxSize(viewport.getPrefWidth(), viewport.getPrefHeight());
@@ -55,11 +94,67 @@ public class TilesetSidebarViewPane extends Pane {
         resizableGrid.gridVerticalSpacing.setValue(tileset.getTileHeight());
         resizableGrid.toFront();
         resizableGrid.setVisible(true);
-        redraw();
+        updateVisibleTiles();
+    }
+    
+    /**
+     * Shows a view for every tile in the visible part of the palette, and hides the views of the other tiles.
+     */
+    private void updateVisibleTiles() {
+        if (tileset == null || tileset.getColumns() <= 0 || tileset.getTileWidth() <= 0 || tileset.getTileHeight() <= 0) {
+            return;
+        }
+        Bounds bounds = viewport.sceneToLocal(localToScene(getLayoutBounds()));
+        if (bounds == null || bounds.isEmpty()) {
+            hideAllTiles();
+            return;
+        }
+        int columns = tileset.getColumns(), rows = tileset.getRows();
+        int minColumn = Math.max(0, (int) Math.floor(bounds.getMinX() / tileset.getTileWidth()));
+        int minRow = Math.max(0, (int) Math.floor(bounds.getMinY() / tileset.getTileHeight()));
+        int maxColumn = Math.min(columns - 1, (int) Math.floor(bounds.getMaxX() / tileset.getTileWidth()));
+        int maxRow = Math.min(rows - 1, (int) Math.floor(bounds.getMaxY() / tileset.getTileHeight()));
+        
+        IntMap.Keys keys = shownTiles.keys();
+        while (keys.hasNext) {
+            int id = keys.next();
+            int column = id % columns, row = id / columns;
+            if (column < minColumn || column > maxColumn || row < minRow || row > maxRow) {
+                TilesetImageView view = shownTiles.get(id);
+                view.setVisible(false);
+                freeViews.add(view);
+                keys.remove();
+            }
+        }
+        
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int id = (row * columns) + column;
+                if (shownTiles.containsKey(id)) {
+                    continue;
+                }
+                TilesetImageView view;
+                if (freeViews.isEmpty()) {
+                    view = new TilesetImageView(tileset, id);
+                    viewport.getChildren().add(view);
+                } else {
+                    view = freeViews.remove(freeViews.size() - 1);
+                    view.setTile(tileset, id);
+                    view.setVisible(true);
+                }
+                view.setTranslateX(column * tileset.getTileWidth());
+                view.setTranslateY(row * tileset.getTileHeight());
+                shownTiles.put(id, view);
+            }
+        }
     }
     
-    private void redraw() {
-        tileset.draw(viewport);
+    private void hideAllTiles() {
+        for (TilesetImageView view : shownTiles.values()) {
+            view.setVisible(false);
+            freeViews.add(view);
+        }
+        shownTiles.clear();
     }
     
 }
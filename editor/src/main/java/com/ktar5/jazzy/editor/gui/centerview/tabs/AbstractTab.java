@@ -14,6 +14,7 @@ public abstract class AbstractTab extends Tab {
     private final UUID tabId;
     protected EditorPane pane;
     private boolean hasEdits = false;
+    private int editCount = 0;
     
     public AbstractTab(UUID uuid) {
         this.tabId = uuid;
@@ -60,6 +61,10 @@ public abstract class AbstractTab extends Tab {
         return pane.getViewport();
     }
     
+    public EditorPane getPane() {
+        return pane;
+    }
+    
     public boolean getEdits() {
         return hasEdits;
     }
@@ -68,7 +73,18 @@ public abstract class AbstractTab extends Tab {
         return tabId;
     }
     
+    /**
+     * @return a counter that goes up every time an edit is made, which lets a background
+     * save tell whether the tab was edited after its snapshot was taken
+     */
+    public int getEditCount() {
+        return editCount;
+    }
+    
     public void setEdit(boolean value) {
+        if (value) {
+            editCount++;
+        }
         if (value == hasEdits) {
             return;
         }
@@ -5,13 +5,12 @@ import com.ktar5.jazzy.editor.gui.centerview.EditorPane;
 import com.ktar5.jazzy.editor.gui.centerview.sidebars.properties.PropertiesSidebar;
 import com.ktar5.jazzy.editor.gui.centerview.sidebars.tileset.TileSelectEvent;
 import com.ktar5.jazzy.editor.gui.centerview.sidebars.tileset.TilesetSidebar;
-import com.ktar5.jazzy.editor.gui.utils.PixelatedImageView;
+import com.ktar5.jazzy.editor.gui.utils.TilesetImageView;
 import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
 import com.ktar5.jazzy.editor.tilemap.MapManager;
 import com.ktar5.jazzy.editor.tilemap.whole.WholeTileLayer;
 import com.ktar5.jazzy.editor.util.Tabbable;
 import javafx.scene.control.SplitPane;
-import javafx.scene.image.Image;
 import lombok.Getter;
 import net.engio.mbassy.listener.Handler;
 import net.engio.mbassy.listener.Listener;
@@ -65,8 +64,7 @@ public abstract class TilemapTab extends AbstractTab {
         @Handler
         public void onSelectTile(TileSelectEvent event) {
             if (event.getTab().equals(this.getTabId())) {
-                Image image = event.getTileset().getTileImages().get(event.getId());
-                getTilesetSidebar().getSelectedTileView().setTile(new PixelatedImageView(image));
+                getTilesetSidebar().getSelectedTileView().setTile(new TilesetImageView(event.getTileset(), event.getId()));
                 WholeTileLayer tilemap = ((WholeTileLayer) getTabbable());
                 tilemap.setCurrentData(event.getId(), 0);
             }
@@ -2,8 +2,10 @@ package com.ktar5.jazzy.editor.gui.centerview.tabs;
 
 import com.ktar5.jazzy.editor.gui.centerview.EditorPane;
 import com.ktar5.jazzy.editor.gui.centerview.sidebars.properties.PropertiesSidebar;
+import com.ktar5.jazzy.editor.gui.centerview.sidebars.tileset.DuplicateTilesView;
 import com.ktar5.jazzy.editor.tileset.TilesetManager;
 import com.ktar5.jazzy.editor.util.Tabbable;
+import javafx.geometry.Orientation;
 import javafx.scene.control.SplitPane;
 import lombok.Getter;
 
@@ -12,13 +14,22 @@ import java.util.UUID;
 @Getter
 public class TilesetTab extends AbstractTab {
     private PropertiesSidebar propertiesSidebar;
+    private DuplicateTilesView duplicateTilesView;
+    //The tileset is only drawn and its duplicates listed once the tab is shown, since both load the atlas
+    private boolean drawPending, duplicatesListed;
     
     public TilesetTab(UUID tilemap) {
         super(tilemap);
         propertiesSidebar = new PropertiesSidebar(TilesetManager.get().getTileset(getTabId()).getRootProperty());
+        duplicateTilesView = new DuplicateTilesView();
+        
+        SplitPane left = new SplitPane();
+        left.setOrientation(Orientation.VERTICAL);
+        left.getItems().addAll(propertiesSidebar, duplicateTilesView);
+        left.setDividerPositions(.7);
         
         SplitPane sp = new SplitPane();
-        sp.getItems().addAll(propertiesSidebar, this.pane);
+        sp.getItems().addAll(left, this.pane);
         sp.setDividerPositions(.2);
         
         this.setContent(sp);
@@ -29,9 +40,17 @@ public class TilesetTab extends AbstractTab {
         return new EditorPane(getTabbable().getDimensions());
     }
     
+    /**
+     * Draws the tileset into the tab, or once the tab is selected if it isn't shown yet.
+     */
     @Override
     public void draw() {
-        getTabbable().draw(getViewport());
+        if (isSelected()) {
+            drawPending = false;
+            getTabbable().draw(getViewport());
+        } else {
+            drawPending = true;
+        }
     }
     
     @Override
@@ -41,7 +60,14 @@ public class TilesetTab extends AbstractTab {
     
     @Override
     public void onSelect() {
-    
+        if (drawPending) {
+            drawPending = false;
+            getTabbable().draw(getViewport());
+        }
+        if (!duplicatesListed) {
+            duplicatesListed = true;
+            duplicateTilesView.setTileset(TilesetManager.get().getTileset(getTabId()));
+        }
     }
     
     
@@ -1,6 +1,7 @@
 package com.ktar5.jazzy.editor.gui.dialogs;
 
 import com.ktar5.jazzy.editor.gui.utils.NumberTextField;
+import com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
 import javafx.scene.control.*;
@@ -38,7 +39,9 @@ public class CreateBaseTilemap {
         
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Create Resource File");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Json File", "*.json"));
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Tilemap File", "*." + BinaryTilemapFormat.EXTENSION),
+                new FileChooser.ExtensionFilter("Json File", "*.json"));
         
         
         TextField filePath = new TextField();
@@ -6,10 +6,10 @@ import java.io.File;
 
 public class LoadDialog {
     
-    public static File create(String title, String extensionDescription, String extension) {
+    public static File create(String title, String extensionDescription, String... extensions) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(extensionDescription, extension));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(extensionDescription, extensions));
         return fileChooser.showOpenDialog(null);
     }
     
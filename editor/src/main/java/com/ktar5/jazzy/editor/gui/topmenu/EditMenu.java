@@ -1,16 +1,55 @@
 package com.ktar5.jazzy.editor.gui.topmenu;
 
+import com.ktar5.jazzy.editor.coordination.EditorCoordinator;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.UndoHistory;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
+import javafx.scene.input.KeyCombination;
 
 public class EditMenu extends Menu {
     
     public EditMenu() {
         super("Edit");
+        
+        final MenuItem undo = new MenuItem("Undo");
+        undo.setOnAction(event -> {
+            UndoHistory history = getCurrentHistory();
+            if (history != null)
+                history.undo();
+        });
+        undo.setAccelerator(KeyCombination.keyCombination("SHORTCUT+Z"));
+        
+        final MenuItem redo = new MenuItem("Redo");
+        redo.setOnAction(event -> {
+            UndoHistory history = getCurrentHistory();
+            if (history != null)
+                history.redo();
+        });
+        redo.setAccelerator(KeyCombination.keyCombination("SHORTCUT+Y"));
+        
+        //Only offer what the history of the current tab can do
+        this.setOnShowing(event -> {
+            UndoHistory history = getCurrentHistory();
+            undo.setDisable(history == null || !history.canUndo());
+            redo.setDisable(history == null || !history.canRedo());
+        });
+        
         this.getItems().addAll(
-                new MenuItem("Undo"),
-                new MenuItem("Redo")
+                undo,
+                redo
         );
     }
     
+    /**
+     * @return the undo history of the tilemap in the current tab, or null if the current tab isn't a tilemap
+     */
+    private UndoHistory getCurrentHistory() {
+        if (EditorCoordinator.get().getCurrentTab() == null
+                || !(EditorCoordinator.get().getCurrentTab().getTabbable() instanceof BaseTilemap)) {
+            return null;
+        }
+        return ((BaseTilemap) EditorCoordinator.get().getCurrentTab().getTabbable()).getUndoHistory();
+    }
+    
 }
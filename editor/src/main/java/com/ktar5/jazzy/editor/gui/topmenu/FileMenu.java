@@ -62,11 +62,19 @@ public class FileMenu extends Menu {
         });
         saveAs.setAccelerator(KeyCombination.keyCombination("SHORTCUT+SHIFT+S"));
         
+        final MenuItem exportJson = new MenuItem("Export Tilemap As Json..");
+        exportJson.setOnAction(event -> {
+            if (EditorCoordinator.get().getCurrentTab() != null
+                    && EditorCoordinator.get().getCurrentTab().getTabbable() instanceof BaseTilemap)
+                MapManager.get().exportMap(EditorCoordinator.get().getCurrentTab().getTabbable().getId());
+        });
+        
         this.getItems().addAll(
                 newMenu,
                 openMenu,
                 save,
                 saveAs,
+                exportJson,
                 new MenuItem("Open Recent"),
                 new MenuItem("Revert")
         );
@@ -20,13 +20,16 @@ public class MapMenu extends Menu {
         addTileset.setOnAction((ActionEvent event) -> {
             final Tab selectedItem = EditorCoordinator.get().getEditor().getSelectionModel().getSelectedItem();
             if (selectedItem instanceof TilemapTab) {
-                BaseTileset baseTileset = TilesetManager.get().loadTileset(
-                );
+                BaseTileset loaded = TilesetManager.get().loadTileset();
+                if (loaded == null) {
+                    return;
+                }
+                //The tab of the tileset holds a reference of its own, the map takes another one until it's closed
                 BaseTilemap map = MapManager.get().getMap(((TilemapTab) selectedItem).getTabId());
+                BaseTileset baseTileset = map.getTilesets().acquire(loaded.getSaveFile(), loaded.getClass());
                 map.setTileset(baseTileset);
-                System.out.println("About to draw tilemap");
-                map.draw(EditorCoordinator.get().getEditor().getTabDrawingPane(map.getId()));
-                System.out.println("Drawing tilemap");
+                //Only the tile images changed, so the visible cells are repainted in place
+                map.getLayers().repaint();
             }
         });
         
@@ -4,6 +4,8 @@ import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.DoublePropertyBase;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Bounds;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.Pane;
@@ -27,6 +29,8 @@ public class ResizableGrid extends Pane {
         }
     };
     private boolean needsLayout;
+    //The size of the grid when the lines were last stroked
+    private int lastWidth = -1, lastHeight = -1;
     public final ObjectProperty<Paint> gridColor = new SimpleObjectProperty<Paint>(
             Color.rgb(0, 0, 0)) {
         
@@ -91,9 +95,28 @@ public class ResizableGrid extends Pane {
         getChildren().add(canvas);
         zoomProperty.bind(regionZoomProperty);
         
+        //Panning and zooming both move the bounds of the region, which changes the lines on screen
         region.boundsInParentProperty().addListener((observable, oldValue, newValue) -> {
             this.setTranslateX(newValue.getMinX());
             this.setTranslateY(newValue.getMinY());
+            needsLayout = true;
+            requestLayout();
+        });
+        
+        //The canvas is as large as the part of the parent the grid is shown in
+        ChangeListener<Bounds> parentBoundsListener = (observable, oldValue, newValue) -> {
+            needsLayout = true;
+            requestLayout();
+        };
+        parentProperty().addListener((observable, oldValue, newValue) -> {
+            if (oldValue != null) {
+                oldValue.layoutBoundsProperty().removeListener(parentBoundsListener);
+            }
+            if (newValue != null) {
+                newValue.layoutBoundsProperty().addListener(parentBoundsListener);
+            }
+            needsLayout = true;
+            requestLayout();
         });
         
         regionZoomProperty.addListener((observable, oldValue, newValue) -> {
@@ -101,20 +124,25 @@ public class ResizableGrid extends Pane {
                 return;
             }
             needsLayout = true;
-            layoutChildren();
+            requestLayout();
         });
         
         this.setPickOnBounds(false);
         this.setMouseTransparent(true);
         
         needsLayout = true;
-        layoutChildren();
+        requestLayout();
     }
     
     private static double snap(double y) {
         return ((int) y) + HALF_PIXEL_OFFSET;
     }
     
+    /**
+     * Only strokes the lines that are on screen, into a canvas that covers the part of the grid that is on screen.
+     * The size of the canvas and the amount of lines are therefore bounded by the size of the parent,
+     * no matter how large the grid is or how far it is zoomed in.
+     */
     @Override
     protected void layoutChildren() {
         final int top = (int) snappedTopInset();
@@ -123,35 +151,59 @@ public class ResizableGrid extends Pane {
         final int left = (int) snappedLeftInset();
         final int width = (int) getWidth() - left - right;
         final int height = (int) getHeight() - top - bottom;
-        final double spacingHorizontal = gridHorizontalSpacing.get();
-        final double spacingVertical = gridVerticalSpacing.get();
-        
-        
-        canvas.setLayoutX(left + 1);
-        canvas.setLayoutY(top + 1);
-        
-        if (width != canvas.getWidth() || height != canvas.getHeight() || needsLayout) {
-            double zoom = zoomProperty.get();
-            canvas.setWidth(width * zoom);
-            canvas.setHeight(height * zoom);
-            
-            GraphicsContext g = canvas.getGraphicsContext2D();
-            g.clearRect(0, 0, width * zoom, height * zoom);
-            g.setFill(gridColor.get());
-            g.setLineWidth(1);
-            g.setLineDashes(4);
-            
-            final int hLineCount = (int) Math.floor((height + 1) / spacingHorizontal) - 1;
-            final int vLineCount = (int) Math.floor((width + 1) / spacingVertical) - 1;
-            for (int i = 0; i < hLineCount; i++) {
-                g.strokeLine(0, snap((i + 1) * spacingVertical * zoom), width * zoom, snap((i + 1) * spacingVertical * zoom));
-            }
-            
-            for (int i = 0; i < vLineCount; i++) {
-                g.strokeLine(snap((i + 1) * spacingHorizontal * zoom), 0, snap((i + 1) * spacingHorizontal * zoom), height * zoom);
-            }
-            
-            needsLayout = false;
+        
+        if (width == lastWidth && height == lastHeight && !needsLayout) {
+            return;
+        }
+        lastWidth = width;
+        lastHeight = height;
+        needsLayout = false;
+        
+        final double zoom = zoomProperty.get();
+        final double spacingHorizontal = gridHorizontalSpacing.get() * zoom;
+        final double spacingVertical = gridVerticalSpacing.get() * zoom;
+        
+        //The part of the zoomed grid that is inside of the parent, in the coordinates of the grid
+        double minX = 0, minY = 0, maxX = width * zoom, maxY = height * zoom;
+        if (getParent() != null) {
+            Bounds visible = parentToLocal(getParent().getLayoutBounds());
+            minX = Math.max(minX, Math.floor(visible.getMinX() - left - 1));
+            minY = Math.max(minY, Math.floor(visible.getMinY() - top - 1));
+            maxX = Math.min(maxX, Math.ceil(visible.getMaxX() - left - 1));
+            maxY = Math.min(maxY, Math.ceil(visible.getMaxY() - top - 1));
+        }
+        
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (maxX <= minX || maxY <= minY || spacingHorizontal <= 0 || spacingVertical <= 0) {
+            canvas.setWidth(0);
+            canvas.setHeight(0);
+            return;
+        }
+        canvas.setLayoutX(left + 1 + minX);
+        canvas.setLayoutY(top + 1 + minY);
+        canvas.setWidth(maxX - minX);
+        canvas.setHeight(maxY - minY);
+        
+        g.setStroke(gridColor.get());
+        g.setLineWidth(1);
+        g.setLineDashes(4);
+        
+        //Lines on the edges of the grid aren't drawn, same as lines that are off screen
+        final int hLineCount = (int) Math.floor((height + 1) / gridVerticalSpacing.get()) - 1;
+        final int vLineCount = (int) Math.floor((width + 1) / gridHorizontalSpacing.get()) - 1;
+        
+        //Dashes are offset by where the canvas starts, so they don't move along with the canvas while panning
+        g.setLineDashOffset(minX);
+        for (int i = Math.max(1, (int) Math.ceil(minY / spacingVertical)); i <= Math.min(hLineCount, (int) (maxY / spacingVertical)); i++) {
+            double y = snap(i * spacingVertical) - minY;
+            g.strokeLine(0, y, maxX - minX, y);
+        }
+        
+        g.setLineDashOffset(minY);
+        for (int i = Math.max(1, (int) Math.ceil(minX / spacingHorizontal)); i <= Math.min(vLineCount, (int) (maxX / spacingHorizontal)); i++) {
+            double x = snap(i * spacingHorizontal) - minX;
+            g.strokeLine(x, 0, x, maxY - minY);
         }
     }
     
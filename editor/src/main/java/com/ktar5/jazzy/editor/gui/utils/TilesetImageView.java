@@ -9,9 +9,20 @@ public class TilesetImageView extends PixelatedImageView {
     private int tileId;
     
     public TilesetImageView(BaseTileset tileset, int tileId) {
-        super(tileset.getTileImages().get(tileId));
+        super(tileset.getAtlas());
+        setViewport(tileset.getTileViewport(tileId));
         this.tileId = tileId;
         this.tileset = tileset;
     }
     
+    /**
+     * Shows another tile, so that views can be reused instead of creating a view for every tile.
+     */
+    public void setTile(BaseTileset tileset, int tileId) {
+        this.tileset = tileset;
+        this.tileId = tileId;
+        setImage(tileset.getAtlas());
+        setViewport(tileset.getTileViewport(tileId));
+    }
+    
 }
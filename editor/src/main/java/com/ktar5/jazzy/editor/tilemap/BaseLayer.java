@@ -1,16 +1,26 @@
 package com.ktar5.jazzy.editor.tilemap;
 
+import com.ktar5.jazzy.editor.coordination.EditorCoordinator;
+import com.ktar5.jazzy.editor.gui.centerview.tabs.AbstractTab;
 import com.ktar5.jazzy.editor.properties.RootProperty;
+import com.ktar5.jazzy.editor.tilemap.storage.ChunkedLayerStorage;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import com.ktar5.jazzy.editor.tilemap.storage.PackedLayerStorage;
 import com.ktar5.jazzy.editor.tileset.Tile;
 import com.ktar5.jazzy.editor.util.Drawable;
 import com.ktar5.jazzy.editor.util.Interactable;
+import com.ktar5.jazzy.editor.util.StringUtil;
 import com.ktar5.utilities.common.constants.Direction;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
 import javafx.util.Pair;
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.Arrays;
 import java.util.Optional;
 
 @Getter
@@ -24,8 +34,35 @@ public abstract class BaseLayer implements Drawable, Interactable {
     private int xOffset, yOffset;
     private int xPadding, yPadding;
     
+    /**
+     * Separates a block from its repeat count in a run-length encoded row
+     */
+    public static final char RUN_SEPARATOR = '*';
+    //Shorter runs take up less space when written out
+    private static final int MIN_RUN_LENGTH = 3;
+    
+    /**
+     * Cells are tracked for saving in square chunks of 2^SAVE_CHUNK_SHIFT cells per side
+     */
+    public static final int SAVE_CHUNK_SHIFT = ChunkedLayerStorage.CHUNK_SHIFT;
+    
     @Getter(AccessLevel.NONE)
-    protected Tile[][] grid;
+    protected LayerStorage storage;
+    //Incremented every time a cell in the chunk changes, so every save can tell what changed since it last ran
+    @Getter(AccessLevel.NONE)
+    private int[] chunkRevisions;
+    //Incremented every time any cell changes
+    private int revision;
+    //The position of the layer in the layers of its tilemap, set when it's added to them
+    @Setter(AccessLevel.PACKAGE)
+    private int index = -1;
+    @Getter(AccessLevel.NONE)
+    private final LayerRenderer renderer = new LayerRenderer(this);
+    //The depth of nested batches, and the cells changed by the current one as {minX, minY, maxX, maxY}
+    @Getter(AccessLevel.NONE)
+    private int batchDepth;
+    @Getter(AccessLevel.NONE)
+    private final int[] batchBounds = new int[4];
     
     public BaseLayer(BaseTilemap parent, JSONObject json) {
         this(parent,
@@ -36,22 +73,14 @@ public abstract class BaseLayer implements Drawable, Interactable {
                 json.getJSONObject("dimensions").getInt("yOffset"),
                 json.getJSONObject("dimensions").getInt("xPadding"),
                 json.getJSONObject("dimensions").getInt("yPadding"));
-        JSONArray grid = json.getJSONArray("tilemap");
-        String[][] blocks = new String[grid.length()][];
-        for (int i = 0; i < grid.length(); i++) {
-            blocks[i] = grid.getString(i).split(",");
-        }
-        for (int x = 0; x < this.grid.length; x++) {
-            for (int y = 0; y < this.grid[0].length; y++) {
-                /*
-                Note here that we switch the x and y variable because we store the data as
-                an array of ROWS, and we load it as ROWS, so the first-dimension array is the ROWS
-                and the 2nd dimension of the array is the COLUMNS
-                See comments in BaseTilemap#getJsonArray on the line with:
-                jsonArray.put(y, builder.toString());
-                Hence, data is stored "y-value, row string"
-                */
-                deserializeBlock(blocks[y][x], x, y);
+        if (json.has("properties")) {
+            rootProperty.deserialize(json.getJSONObject("properties"));
+        }
+        //The tilemap section is left out when the rows are streamed in by TilemapReader
+        if (json.has("tilemap")) {
+            JSONArray grid = json.getJSONArray("tilemap");
+            for (int y = 0; y < grid.length(); y++) {
+                deserializeRow(y, grid.getString(y));
             }
         }
     }
@@ -69,7 +98,21 @@ public abstract class BaseLayer implements Drawable, Interactable {
         this.xPadding = xPadding;
         this.yPadding = yPadding;
         Pair<Integer, Integer> xydimension = calculateTileCounts();
-        this.grid = new Tile[xydimension.getKey()][xydimension.getValue()];
+        this.storage = createStorage(xydimension.getKey(), xydimension.getValue());
+        this.chunkRevisions = new int[getSaveChunkColumns() * getSaveChunkRows()];
+    }
+    
+    /**
+     * Creates the storage that holds the cells of this layer. By default this is a
+     * {@link ChunkedLayerStorage}, which only allocates memory for the painted areas of the map.
+     * Layers that are expected to be almost completely filled can override this to use a
+     * {@link PackedLayerStorage} instead.
+     *
+     * @param columns the amount of tiles along the x axis
+     * @param rows    the amount of tiles along the y axis
+     */
+    protected LayerStorage createStorage(int columns, int rows) {
+        return new ChunkedLayerStorage(columns, rows);
     }
     
     private Pair<Integer, Integer> calculateTileCounts() {
@@ -78,14 +121,96 @@ public abstract class BaseLayer implements Drawable, Interactable {
         return new Pair<>(xTiles, yTiles);
     }
     
+    /**
+     * Decodes one row of the "tilemap" section of the serialized json file straight into
+     * the storage of this layer, without splitting it into a string per block.
+     * <p>
+     * Rows are stored as an array of ROWS, so the index in the "tilemap" array is the
+     * y-value and the position in the comma-separated string is the x-value.
+     * A block may be followed by {@link #RUN_SEPARATOR} and a count, such as "0*8",
+     * to repeat it for that many cells.
+     *
+     * @param y   the y-value of the row
+     * @param row the comma-separated string representing the row
+     */
+    public void deserializeRow(int y, CharSequence row) {
+        if (y >= getRows()) {
+            return;
+        }
+        int x = 0, start = 0;
+        for (int i = 0; i <= row.length() && x < getColumns(); i++) {
+            if (i != row.length() && row.charAt(i) != ',') {
+                continue;
+            }
+            int run = StringUtil.indexOf(row, RUN_SEPARATOR, start, i);
+            if (run == -1) {
+                storage.set(x++, y, start == i ? LayerStorage.EMPTY : deserializeBlock(row, start, i));
+            } else {
+                int value = start == run ? LayerStorage.EMPTY : deserializeBlock(row, start, run);
+                int end = Math.min(x + StringUtil.parseInt(row, run + 1, i), getColumns());
+                while (x < end) {
+                    storage.set(x++, y, value);
+                }
+            }
+            start = i + 1;
+        }
+    }
+    
+    /**
+     * Decodes a single cell straight into the storage of this layer.
+     */
+    public void deserializeCell(int x, int y, int value) {
+        storage.set(x, y, value);
+    }
+    
+    /**
+     * Decodes a run of cells that all have the same packed value straight into the storage
+     * of this layer. Cells are indexed in row-major order, like {@link #cellIndex(int, int)}.
+     *
+     * @param index  the index of the first cell of the run
+     * @param length the amount of cells in the run
+     * @param value  the packed value of every cell in the run
+     */
+    public void deserializeRun(int index, int length, int value) {
+        if (value == LayerStorage.EMPTY) {
+            //Storage starts out empty
+            return;
+        }
+        int columns = getColumns();
+        for (int i = index; i < index + length; i++) {
+            storage.set(i % columns, i / columns, value);
+        }
+    }
+    
     /**
      * This method is called to deserialize each comma-separated string in the
      * "tilemap" section of the serialized json file
      *
-     * @param block the string representing a single element of the comma-separated string in
-     *              the serialized json file
+     * @param row   the row containing the block
+     * @param start the index in the row where the block starts (inclusive)
+     * @param end   the index in the row where the block ends (exclusive)
+     * @return the packed value to store in the cell, or {@link LayerStorage#EMPTY} for no tile
+     */
+    protected abstract int deserializeBlock(CharSequence row, int start, int end);
+    
+    /**
+     * The counterpart of {@link #deserializeBlock(CharSequence, int, int)}, this method should
+     * append the string representing a single cell to the builder. Saving calls this from a
+     * background thread, so it must only depend on the value that is passed in.
+     *
+     * @param value   the packed value of the cell, which may be {@link LayerStorage#EMPTY}
+     * @param builder the builder of the row being serialized
+     */
+    protected abstract void serializeBlock(int value, StringBuilder builder);
+    
+    /**
+     * Materialises the packed value of a cell into a tile object. Tiles are not kept
+     * by the layer, so this is called every time a tile object is requested.
+     *
+     * @param value the packed value of the cell, never {@link LayerStorage#EMPTY}
+     * @return the tile represented by the packed value
      */
-    protected abstract void deserializeBlock(String block, int x, int y);
+    protected abstract Tile createTile(int value);
     
     public Optional<Tile> tileFromPoint(int x, int y) {
         if (!parent.isInMapRange(x, y)) {
@@ -93,27 +218,374 @@ public abstract class BaseLayer implements Drawable, Interactable {
         }
         x = (x - xOffset) / (tileWidth + xPadding);
         y = (y - yOffset) / (tileHeight + yPadding);
-        if (x < 0 || y < 0)
+        if (!storage.isInRange(x, y))
             return Optional.empty();
         else
-            return Optional.of(grid[x][y]);
+            return getTile(x, y);
+    }
+    
+    /**
+     * @return the tile in the given cell, materialised from its packed value
+     */
+    public Optional<Tile> getTile(int x, int y) {
+        int value = storage.get(x, y);
+        if (value == LayerStorage.EMPTY) {
+            return Optional.empty();
+        }
+        return Optional.of(createTile(value));
+    }
+    
+    /**
+     * @return the packed value of the given cell
+     */
+    public int getCell(int x, int y) {
+        return storage.get(x, y);
+    }
+    
+    /**
+     * Sets the packed value of the given cell, logs the change in the {@link UndoHistory} of the tilemap,
+     * and marks it to be repainted if the layer has been drawn.
+     *
+     * @return the packed value that was previously in the cell
+     */
+    protected int setCell(int x, int y, int value) {
+        int previous = storage.set(x, y, value);
+        if (previous != value) {
+            chunkRevisions[((y >> SAVE_CHUNK_SHIFT) * getSaveChunkColumns()) + (x >> SAVE_CHUNK_SHIFT)]++;
+            revision++;
+            parent.getUndoHistory().record(index, cellIndex(x, y), previous, value);
+            if (batchDepth > 0) {
+                batchBounds[0] = Math.min(batchBounds[0], x);
+                batchBounds[1] = Math.min(batchBounds[1], y);
+                batchBounds[2] = Math.max(batchBounds[2], x);
+                batchBounds[3] = Math.max(batchBounds[3], y);
+            } else if (renderer.isAttached()) {
+                renderer.markDirty(x, y);
+            }
+        }
+        return previous;
+    }
+    
+    /**
+     * Runs a batch of edits to this layer. The cells it changes are repainted together once it is done,
+     * the tilemap is marked as changed once, and the whole batch is a single transaction in the
+     * {@link UndoHistory}. Batches can be nested, everything happens at the end of the outermost one.
+     */
+    public void batch(Runnable edits) {
+        if (batchDepth++ == 0) {
+            batchBounds[0] = batchBounds[1] = Integer.MAX_VALUE;
+            batchBounds[2] = batchBounds[3] = -1;
+        }
+        parent.getUndoHistory().begin();
+        try {
+            edits.run();
+        } finally {
+            parent.getUndoHistory().end();
+            if (--batchDepth == 0 && batchBounds[2] != -1) {
+                if (renderer.isAttached()) {
+                    renderer.markDirty(batchBounds[0], batchBounds[1], batchBounds[2], batchBounds[3]);
+                }
+                parent.setChanged(true);
+            }
+        }
+    }
+    
+    /**
+     * Sets every cell in a rectangle to the same packed value, in a single {@link #batch(Runnable)}.
+     * The parts of the rectangle outside of the layer are ignored.
+     *
+     * @param x      the first column of the rectangle
+     * @param y      the first row of the rectangle
+     * @param width  the amount of columns in the rectangle
+     * @param height the amount of rows in the rectangle
+     * @param value  the packed value to put in every cell
+     */
+    public void fill(int x, int y, int width, int height, int value) {
+        int minX = Math.max(x, 0), maxX = Math.min(x + width, getColumns());
+        int minY = Math.max(y, 0), maxY = Math.min(y + height, getRows());
+        batch(() -> {
+            for (int cellY = minY; cellY < maxY; cellY++) {
+                for (int cellX = minX; cellX < maxX; cellX++) {
+                    setCell(cellX, cellY, value);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Empties every cell in a rectangle, see {@link #fill(int, int, int, int, int)}.
+     */
+    public void clear(int x, int y, int width, int height) {
+        fill(x, y, width, height, LayerStorage.EMPTY);
+    }
+    
+    /**
+     * Copies the cells in a rectangle, which can be pasted into any layer of the same kind later.
+     * Cells of the rectangle outside of the layer are copied as {@link LayerStorage#EMPTY}.
+     *
+     * @return the packed values of the cells, with the first cell of the rectangle at 0, 0
+     */
+    public LayerStorage copy(int x, int y, int width, int height) {
+        LayerStorage block = new PackedLayerStorage(width, height);
+        int minX = Math.max(x, 0), maxX = Math.min(x + width, getColumns());
+        int minY = Math.max(y, 0), maxY = Math.min(y + height, getRows());
+        for (int cellY = minY; cellY < maxY; cellY++) {
+            for (int cellX = minX; cellX < maxX; cellX++) {
+                int value = storage.get(cellX, cellY);
+                if (value != LayerStorage.EMPTY) {
+                    block.set(cellX - x, cellY - y, value);
+                }
+            }
+        }
+        return block;
+    }
+    
+    /**
+     * Writes a block of cells into this layer, in a single {@link #batch(Runnable)}.
+     * The parts of the block that fall outside of the layer are ignored.
+     *
+     * @param block     the packed values to write, such as the result of {@link #copy(int, int, int, int)}
+     * @param x         the column the first cell of the block goes to
+     * @param y         the row the first cell of the block goes to
+     * @param skipEmpty true to leave the cells under empty cells of the block as they are
+     */
+    public void paste(LayerStorage block, int x, int y, boolean skipEmpty) {
+        int minX = Math.max(x, 0), maxX = Math.min(x + block.getColumns(), getColumns());
+        int minY = Math.max(y, 0), maxY = Math.min(y + block.getRows(), getRows());
+        batch(() -> {
+            for (int cellY = minY; cellY < maxY; cellY++) {
+                for (int cellX = minX; cellX < maxX; cellX++) {
+                    int value = block.get(cellX - x, cellY - y);
+                    if (value != LayerStorage.EMPTY || !skipEmpty) {
+                        setCell(cellX, cellY, value);
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Sets the cell at the given position and every cell connected to it that has the same packed value
+     * to a new value, in a single {@link #batch(Runnable)}. Cells are connected through their four sides.
+     * <p>
+     * This is a scanline fill: every seed fills its whole run of matching cells along the row,
+     * and then adds a single seed for every run of matching cells right above and below it.
+     * Seeds are kept on an explicit stack, so regions of any size and shape can be filled.
+     *
+     * @return the amount of cells that were changed
+     */
+    public int floodFill(int x, int y, int value) {
+        if (!storage.isInRange(x, y)) {
+            return 0;
+        }
+        int target = storage.get(x, y);
+        if (target == value) {
+            return 0;
+        }
+        int[] filled = new int[1];
+        batch(() -> {
+            int columns = getColumns();
+            //Cell indices of the seeds
+            int[] stack = new int[64];
+            int size = 0;
+            stack[size++] = cellIndex(x, y);
+            while (size > 0) {
+                int seed = stack[--size];
+                int seedX = seed % columns, seedY = seed / columns;
+                if (storage.get(seedX, seedY) != target) {
+                    //Filled by an earlier seed since it was added
+                    continue;
+                }
+                int left = seedX, right = seedX;
+                while (left > 0 && storage.get(left - 1, seedY) == target) {
+                    left--;
+                }
+                while (right < columns - 1 && storage.get(right + 1, seedY) == target) {
+                    right++;
+                }
+                for (int cellX = left; cellX <= right; cellX++) {
+                    setCell(cellX, seedY, value);
+                }
+                filled[0] += right - left + 1;
+                
+                for (int row = seedY - 1; row <= seedY + 1; row += 2) {
+                    if (row < 0 || row >= getRows()) {
+                        continue;
+                    }
+                    boolean inRun = false;
+                    for (int cellX = left; cellX <= right; cellX++) {
+                        boolean matches = storage.get(cellX, row) == target;
+                        if (matches && !inRun) {
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = cellIndex(cellX, row);
+                        }
+                        inRun = matches;
+                    }
+                }
+            }
+        });
+        return filled[0];
+    }
+    
+    /**
+     * Paints a single cell of this layer, called by the {@link LayerRenderer} of the layer.
+     * The graphics may be scaled down for a lower level of detail, so the cell must be painted
+     * exactly tile width by tile height in size, without relying on pixel positions.
+     *
+     * @param graphics the graphics of the canvas that holds the cell
+     * @param value    the packed value of the cell, never {@link LayerStorage#EMPTY}
+     * @param x        the x position of the cell on the canvas
+     * @param y        the y position of the cell on the canvas
+     */
+    protected abstract void paintCell(GraphicsContext graphics, int value, double x, double y);
+    
+    /**
+     * Paints the cells of this layer onto canvases in the given pane. If the pane is the viewport of
+     * the tab of the tilemap, only the cells on screen are painted, and the rest follow as they scroll into view.
+     */
+    @Override
+    public void draw(Pane pane) {
+        AbstractTab tab = EditorCoordinator.get().getEditor().getTab(parent.getId());
+        boolean inViewport = tab != null && tab.getViewport() == pane;
+        renderer.attach(pane, inViewport ? tab.getPane() : null);
+        renderer.repaintAll();
+    }
+    
+    /**
+     * Repaints every cell of this layer before the next frame, if it has been drawn.
+     * Used for changes that affect how every cell looks, like a new tileset.
+     */
+    public void repaint() {
+        if (renderer.isAttached()) {
+            renderer.markAllDirty();
+        }
+    }
+    
+    /**
+     * A save that remembers the revision of a chunk when it last wrote it knows the chunk has been
+     * edited since if the revision differs. Chunks are indexed row by row, see {@link #getSaveChunkColumns()}.
+     *
+     * @return the revision of the given save chunk
+     */
+    public int getChunkRevision(int chunkIndex) {
+        return chunkRevisions[chunkIndex];
+    }
+    
+    /**
+     * @return the amount of save chunks along the x axis
+     */
+    public int getSaveChunkColumns() {
+        return (getColumns() + (1 << SAVE_CHUNK_SHIFT) - 1) >> SAVE_CHUNK_SHIFT;
+    }
+    
+    /**
+     * @return the amount of save chunks along the y axis
+     */
+    public int getSaveChunkRows() {
+        return (getRows() + (1 << SAVE_CHUNK_SHIFT) - 1) >> SAVE_CHUNK_SHIFT;
+    }
+    
+    /**
+     * @return a copy of the cells of this layer that stays the same while the layer is edited
+     */
+    public LayerStorage snapshotStorage() {
+        return storage.copy();
+    }
+    
+    /**
+     * @return a unique index for the given cell, useful as a key for per-cell data
+     */
+    protected int cellIndex(int x, int y) {
+        return (y * getColumns()) + x;
     }
     
     @Deprecated
     public void expandMap(int n, Direction direction) {
-        int heightTmpMap = parent.getHeight() + (direction.y * n);
-        int widthTmpMap = parent.getWidth() + (direction.x * n);
-        Tile[][] tilemap = new Tile[widthTmpMap][heightTmpMap];
+        int heightTmpMap = getRows() + (direction.y * n);
+        int widthTmpMap = getColumns() + (direction.x * n);
+        LayerStorage tilemap = createStorage(widthTmpMap, heightTmpMap);
         
         // Copy the old map's data to the new one.
-        for (int y = 0; y < grid.length; y++) {
-            //TODO might need to fix
-            System.arraycopy(grid[y], 0, tilemap[y + direction.y * n], direction.x * n, grid[0].length);
-        }
+        //TODO might need to fix
+        storage.forEachTile((x, y, value) -> tilemap.set(x + direction.x * n, y + direction.y * n, value));
         parent.setChanged(true);
     }
     
-    public abstract JSONObject serialize();
+    /**
+     * @return the json serialization of this layer, without the "tilemap" section
+     */
+    public JSONObject serializeHeader() {
+        JSONObject json = new JSONObject();
+        
+        getRootProperty().serialize(json);
+        
+        json.put("name", name);
+        json.put("visible", visible);
+        
+        JSONObject dimensions = new JSONObject();
+        dimensions.put("tileHeight", tileHeight);
+        dimensions.put("tileWidth", tileWidth);
+        dimensions.put("xOffset", xOffset);
+        dimensions.put("yOffset", yOffset);
+        dimensions.put("xPadding", xPadding);
+        dimensions.put("yPadding", yPadding);
+        json.put("dimensions", dimensions);
+        return json;
+    }
+    
+    public JSONObject serialize() {
+        JSONObject json = serializeHeader();
+        
+        json.put("tilemap", serializeRows(true));
+        return json;
+    }
+    
+    /**
+     * Serializes the "tilemap" section of the json file, the counterpart of {@link #deserializeRow(int, CharSequence)}.
+     *
+     * @param runLength true to write runs of at least {@link #MIN_RUN_LENGTH} identical cells as
+     *                  a single block followed by a count, such as "0*8"
+     */
+    public JSONArray serializeRows(boolean runLength) {
+        return serializeRows(storage, runLength);
+    }
+    
+    /**
+     * Serializes the "tilemap" section of the json file from a snapshot of this layer's cells.
+     * This doesn't touch the layer itself, so it is safe to call from a background thread.
+     *
+     * @param storage   a snapshot taken with {@link #snapshotStorage()}
+     * @param runLength see {@link #serializeRows(boolean)}
+     */
+    public JSONArray serializeRows(LayerStorage storage, boolean runLength) {
+        JSONArray tilemap = new JSONArray();
+        StringBuilder builder = new StringBuilder();
+        int columns = storage.getColumns();
+        for (int y = 0; y < storage.getRows(); y++) {
+            builder.setLength(0);
+            for (int x = 0; x < columns; ) {
+                int value = storage.get(x, y);
+                int end = x + 1;
+                while (runLength && end < columns && storage.get(end, y) == value) {
+                    end++;
+                }
+                if (x != 0) {
+                    builder.append(',');
+                }
+                serializeBlock(value, builder);
+                if (end - x >= MIN_RUN_LENGTH) {
+                    builder.append(RUN_SEPARATOR).append(end - x);
+                    x = end;
+                } else {
+                    x++;
+                }
+            }
+            tilemap.put(y, builder.toString());
+        }
+        return tilemap;
+    }
     
     public int getWidth() {
         return parent.getWidth();
@@ -123,6 +595,20 @@ public abstract class BaseLayer implements Drawable, Interactable {
         return parent.getHeight();
     }
     
+    /**
+     * @return the amount of tiles along the x axis of this layer
+     */
+    public int getColumns() {
+        return storage.getColumns();
+    }
+    
+    /**
+     * @return the amount of tiles along the y axis of this layer
+     */
+    public int getRows() {
+        return storage.getRows();
+    }
+    
     public boolean isDragging() {
         return parent.isDragging();
     }
@@ -5,6 +5,7 @@ import com.ktar5.jazzy.editor.properties.RootProperty;
 import com.ktar5.jazzy.editor.tileset.Tilesets;
 import com.ktar5.jazzy.editor.util.Tabbable;
 import com.ktar5.utilities.annotation.callsuper.CallSuper;
+import javafx.scene.input.MouseEvent;
 import javafx.util.Pair;
 import lombok.Getter;
 import lombok.Setter;
@@ -19,6 +20,7 @@ import java.util.UUID;
 public abstract class BaseTilemap implements Tabbable {
     private Layers layers;
     private Tilesets tilesets;
+    private UndoHistory undoHistory;
     private RootProperty rootProperty;
     
     private final int width, height;
@@ -38,6 +40,9 @@ public abstract class BaseTilemap implements Tabbable {
         this(saveFile, json.getJSONObject("dimensions").getInt("width"),
                 json.getJSONObject("dimensions").getInt("height"));
         rootProperty.deserialize(json.getJSONObject("properties"));
+        if (json.has("layers")) {
+            layers.deserialize(json.getJSONArray("layers"));
+        }
     }
     
     /**
@@ -56,6 +61,7 @@ public abstract class BaseTilemap implements Tabbable {
         this.id = UUID.randomUUID();
         this.layers = new Layers(this);
         this.tilesets = new Tilesets(this);
+        this.undoHistory = new UndoHistory(this);
     }
     
     /**
@@ -66,6 +72,29 @@ public abstract class BaseTilemap implements Tabbable {
      */
     public abstract TilemapTab getNewTilemapTab();
     
+    /**
+     * Creates a layer from its json serialization. This is called for every entry in the
+     * "layers" section while the tilemap is being deserialized.
+     * It **MUST** be overriden by all subclasses.
+     *
+     * @param json the json serialization of the layer
+     * @return a new layer belonging to this tilemap
+     */
+    protected abstract BaseLayer deserializeLayer(JSONObject json);
+    
+    /**
+     * Starts a transaction in the undo history, so the whole drag stroke is undone at once.
+     */
+    @Override
+    public void onDragStart(MouseEvent event) {
+        undoHistory.begin();
+    }
+    
+    @Override
+    public void onDragEnd(MouseEvent event) {
+        undoHistory.end();
+    }
+    
     /**
      * @return true if the x and y are within the bounds of the map
      */
@@ -74,13 +103,24 @@ public abstract class BaseTilemap implements Tabbable {
     }
     
     @Override
-    @CallSuper
     /**
      * Serializes the information stored in the tilemap to a json file.
+     * Subclasses should override {@link #serializeHeader()} to add their specific information.
+     */
+    public JSONObject serialize() {
+        JSONObject json = serializeHeader();
+        json.put("layers", layers.serialize());
+        return json;
+    }
+    
+    @CallSuper
+    /**
+     * Serializes everything but the layers of the tilemap. This is shared by the json
+     * and the binary format.
      * Subclasses should override this and provide specific implementations.
      * NOTE: all subclasses must call super or else code won't compile.
      */
-    public JSONObject serialize() {
+    public JSONObject serializeHeader() {
         JSONObject json = new JSONObject();
         
         getRootProperty().serialize(json);
@@ -92,8 +132,6 @@ public abstract class BaseTilemap implements Tabbable {
         
         JSONObject spawn = new JSONObject();
         json.put("spawn", spawn);
-        
-        json.put("layers", layers.serialize());
         return json;
     }
     
@@ -0,0 +1,583 @@
+package com.ktar5.jazzy.editor.tilemap;
+
+import com.ktar5.jazzy.editor.gui.centerview.ChunkCache;
+import com.ktar5.jazzy.editor.gui.centerview.EditorPane;
+import com.ktar5.jazzy.editor.gui.centerview.RepaintTracker;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Bounds;
+import javafx.scene.Group;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Scale;
+import org.mini2Dx.gdx.utils.IntArray;
+import org.mini2Dx.gdx.utils.IntMap;
+
+/**
+ * Paints the cells of a layer onto canvases, instead of adding a node to the scene graph for every tile.
+ * <p>
+ * The layer is split into square chunks of 2^CHUNK_SHIFT cells per side, and every chunk gets its own
+ * canvas once the first tile is painted into it. Empty parts of a map therefore cost nothing, and
+ * repainting a single cell never touches more than one canvas.
+ * <p>
+ * Only the chunks that are on screen, plus a margin of {@link #MARGIN} chunks around them, are painted.
+ * Chunks that scroll out of that range lose their canvas, and chunks that scroll into it are painted,
+ * so the cost of panning and the memory used by canvases are bounded by the size of the screen
+ * instead of the size of the map.
+ * <p>
+ * Below a zoom of {@link #LOD_THRESHOLD} the layer is painted at a lower level of detail. At level n a chunk
+ * covers 2^n times as many cells per side, but its canvas keeps the size of a chunk at full detail and is
+ * scaled up by 2^n, so the amount of canvases and pixels on screen stays the same at every zoom.
+ * Lower levels are painted from a mip chain of every cell value: its pixels at full detail, then every level
+ * downscaled from the one before by averaging 2 by 2 pixels, down to a single pixel. A chunk at level n is
+ * filled with the pixels of level n of its cells in a single write, so painting a chunk costs as much as
+ * its pixels instead of a draw per cell. Once cells are smaller than a pixel, every pixel gets the color
+ * of the cell at its top left corner.
+ * <p>
+ * Chunks that scroll out of view, or that belong to another level of detail than the current one, are kept
+ * in the {@link ChunkCache} of the pane, so panning back and forth doesn't paint the same chunks over and over.
+ * <p>
+ * Edited cells are only marked as dirty, and repainted by the {@link RepaintTracker} of the pane
+ * before the next frame, one rectangle per chunk that covers every cell edited in it.
+ */
+public class LayerRenderer implements RepaintTracker.Target {
+    public static final int CHUNK_SHIFT = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    //Chunks painted around the visible ones, so that panning a little doesn't show empty space
+    private static final int MARGIN = 1;
+    /**
+     * The zoom below which layers are painted at a lower level of detail
+     */
+    public static final double LOD_THRESHOLD = 0.5;
+    //Deep enough for the smallest zoom of the ZoomablePannablePane
+    private static final int MAX_LEVEL = 6;
+    //The largest canvas that cell values are painted into at once to build their mip chains
+    private static final int MAX_SHEET_SIZE = 2048;
+    
+    private final BaseLayer layer;
+    private final Group group = new Group();
+    //Canvases of the chunks that have been painted at the current level, keyed by chunk index
+    private final IntMap<Canvas> chunks = new IntMap<>();
+    private final ChangeListener<Bounds> visibleListener = (observable, oldValue, newValue) -> setVisibleBounds(newValue);
+    //The pane that shows the layer, null if the layer is painted in full at full detail
+    private EditorPane editor;
+    //Cells edited since the last repaint, as {minX, minY, maxX, maxY} per chunk index
+    private final IntMap<int[]> dirtyRegions = new IntMap<>();
+    private boolean allDirty;
+    //The mip chain of cell values as argb, keyed by packed value, used below full detail
+    private final IntMap<int[][]> cellMips = new IntMap<>();
+    
+    //The level of detail of the painted chunks, 0 is full detail
+    private int level;
+    //The range of chunks that is painted, inclusive. Empty until the layer is painted.
+    private int minChunkX = 0, minChunkY = 0, maxChunkX = -1, maxChunkY = -1;
+    
+    public LayerRenderer(BaseLayer layer) {
+        this.layer = layer;
+    }
+    
+    /**
+     * Adds the canvases of the layer to the given pane, unless they are already in it.
+     *
+     * @param editor the editor pane whose viewport is the given pane, or null to paint the whole layer
+     *               at full detail and repaint edited cells right away
+     */
+    public void attach(Pane pane, EditorPane editor) {
+        if (this.editor != editor) {
+            if (this.editor != null) {
+                this.editor.visibleBoundsProperty().removeListener(visibleListener);
+            }
+            this.editor = editor;
+            if (editor != null) {
+                editor.visibleBoundsProperty().addListener(visibleListener);
+            }
+        }
+        if (group.getParent() == pane) {
+            return;
+        }
+        if (group.getParent() instanceof Pane) {
+            ((Pane) group.getParent()).getChildren().remove(group);
+        }
+        pane.getChildren().add(group);
+    }
+    
+    /**
+     * @return true if the canvases of the layer are currently in a pane
+     */
+    public boolean isAttached() {
+        return group.getParent() != null;
+    }
+    
+    /**
+     * Throws away every canvas and paints every chunk in the visible range again.
+     *
+     * @return the amount of cells that were painted
+     */
+    public int repaintAll() {
+        if (editor != null) {
+            editor.getChunkCache().invalidateAll(this);
+        }
+        group.getChildren().clear();
+        chunks.clear();
+        dirtyRegions.clear();
+        allDirty = false;
+        group.setVisible(layer.isVisible());
+        
+        maxChunkX = maxChunkY = -1;
+        if (editor == null) {
+            level = 0;
+            return setVisibleChunks(0, 0, getChunkColumns() - 1, getChunkRows() - 1);
+        } else {
+            return setVisibleBounds(editor.visibleBoundsProperty().get());
+        }
+    }
+    
+    /**
+     * Marks the whole layer as dirty, for changes that affect every cell, like a new tileset.
+     */
+    public void markAllDirty() {
+        cellMips.clear();
+        if (editor == null) {
+            repaintAll();
+            return;
+        }
+        allDirty = true;
+        dirtyRegions.clear();
+        editor.getRepaintTracker().schedule(this);
+    }
+    
+    /**
+     * Marks a single cell as dirty, called after its value changed.
+     * Cells outside of the visible range are painted once they scroll into view.
+     */
+    public void markDirty(int x, int y) {
+        markDirty(x, y, x, y);
+    }
+    
+    /**
+     * Marks a rectangle of cells as dirty, called after a batch of edits within it.
+     *
+     * @param minX the first column of the rectangle
+     * @param minY the first row of the rectangle
+     * @param maxX the last column of the rectangle, inclusive
+     * @param maxY the last row of the rectangle, inclusive
+     */
+    public void markDirty(int minX, int minY, int maxX, int maxY) {
+        if (editor != null) {
+            //Chunks on screen aren't in the cache, so this only drops the ones that are out of date now
+            for (int cached = 0; cached <= MAX_LEVEL; cached++) {
+                int shift = CHUNK_SHIFT + cached;
+                for (int chunkY = minY >> shift; chunkY <= maxY >> shift; chunkY++) {
+                    for (int chunkX = minX >> shift; chunkX <= maxX >> shift; chunkX++) {
+                        editor.getChunkCache().invalidate(this, chunkX, chunkY, cached);
+                    }
+                }
+            }
+        }
+        if (editor != null && allDirty) {
+            return;
+        }
+        
+        int span = getChunkSpan();
+        int fromChunkX = Math.max(minX / span, minChunkX), toChunkX = Math.min(maxX / span, maxChunkX);
+        int fromChunkY = Math.max(minY / span, minChunkY), toChunkY = Math.min(maxY / span, maxChunkY);
+        for (int chunkY = fromChunkY; chunkY <= toChunkY; chunkY++) {
+            for (int chunkX = fromChunkX; chunkX <= toChunkX; chunkX++) {
+                //The part of the rectangle within this chunk
+                int regionMinX = Math.max(minX, chunkX * span), regionMaxX = Math.min(maxX, ((chunkX + 1) * span) - 1);
+                int regionMinY = Math.max(minY, chunkY * span), regionMaxY = Math.min(maxY, ((chunkY + 1) * span) - 1);
+                if (editor == null) {
+                    repaintRegion(chunkX, chunkY, regionMinX, regionMinY, regionMaxX, regionMaxY);
+                    continue;
+                }
+                
+                int index = getChunkIndex(chunkX, chunkY);
+                int[] region = dirtyRegions.get(index);
+                if (region == null) {
+                    dirtyRegions.put(index, new int[]{regionMinX, regionMinY, regionMaxX, regionMaxY});
+                } else {
+                    region[0] = Math.min(region[0], regionMinX);
+                    region[1] = Math.min(region[1], regionMinY);
+                    region[2] = Math.max(region[2], regionMaxX);
+                    region[3] = Math.max(region[3], regionMaxY);
+                }
+            }
+        }
+        if (editor != null && fromChunkX <= toChunkX && fromChunkY <= toChunkY) {
+            editor.getRepaintTracker().schedule(this);
+        }
+    }
+    
+    @Override
+    public int repaintDirty() {
+        if (allDirty) {
+            return repaintAll();
+        }
+        int cells = 0, columns = getChunkColumns();
+        for (IntMap.Entry<int[]> entry : dirtyRegions.entries()) {
+            int chunkX = entry.key % columns, chunkY = entry.key / columns;
+            //Chunks that scrolled into view since were painted in full already
+            if (isChunkVisible(chunkX, chunkY)) {
+                int[] region = entry.value;
+                cells += repaintRegion(chunkX, chunkY, region[0], region[1], region[2], region[3]);
+            }
+        }
+        dirtyRegions.clear();
+        return cells;
+    }
+    
+    /**
+     * @return the level of detail to paint at the given zoom, where every level halves the detail
+     */
+    static int levelOfDetail(double zoom) {
+        if (zoom >= LOD_THRESHOLD) {
+            return 0;
+        }
+        int level = 1;
+        while (level < MAX_LEVEL && zoom < LOD_THRESHOLD / (1 << level)) {
+            level++;
+        }
+        return level;
+    }
+    
+    private int setVisibleBounds(Bounds bounds) {
+        int newLevel = levelOfDetail(editor.getZoomablePannablePane().getZoomProperty().get());
+        if (newLevel != level) {
+            //Every chunk covers a different part of the layer at the new level
+            setVisibleChunks(0, 0, -1, -1);
+            dirtyRegions.clear();
+            level = newLevel;
+        }
+        
+        long chunkWidth = getChunkSpan() * (long) layer.getTileWidth(), chunkHeight = getChunkSpan() * (long) layer.getTileHeight();
+        if (bounds == null || bounds.isEmpty() || chunkWidth <= 0 || chunkHeight <= 0) {
+            return setVisibleChunks(0, 0, -1, -1);
+        }
+        return setVisibleChunks(
+                Math.max(0, (int) Math.floor(bounds.getMinX() / chunkWidth) - MARGIN),
+                Math.max(0, (int) Math.floor(bounds.getMinY() / chunkHeight) - MARGIN),
+                Math.min(getChunkColumns() - 1, (int) Math.floor(bounds.getMaxX() / chunkWidth) + MARGIN),
+                Math.min(getChunkRows() - 1, (int) Math.floor(bounds.getMaxY() / chunkHeight) + MARGIN));
+    }
+    
+    /**
+     * Moves the painted range of chunks. Chunks that leave the range are dropped, and only the chunks
+     * that enter it are painted, so this is cheap when the range barely moves.
+     *
+     * @return the amount of cells that were painted
+     */
+    private int setVisibleChunks(int minX, int minY, int maxX, int maxY) {
+        if (minX == minChunkX && minY == minChunkY && maxX == maxChunkX && maxY == maxChunkY) {
+            return 0;
+        }
+        
+        IntMap.Keys keys = chunks.keys();
+        int columns = getChunkColumns();
+        while (keys.hasNext) {
+            int index = keys.next();
+            int chunkX = index % columns, chunkY = index / columns;
+            if (chunkX < minX || chunkX > maxX || chunkY < minY || chunkY > maxY) {
+                Canvas canvas = chunks.get(index);
+                group.getChildren().remove(canvas);
+                keys.remove();
+                //Chunks with edits that haven't been repainted yet are out of date
+                if (editor != null && !allDirty && dirtyRegions.remove(index) == null) {
+                    editor.getChunkCache().put(this, chunkX, chunkY, level, canvas);
+                }
+            }
+        }
+        
+        int cells = 0;
+        for (int chunkY = minY; chunkY <= maxY; chunkY++) {
+            for (int chunkX = minX; chunkX <= maxX; chunkX++) {
+                if (isChunkVisible(chunkX, chunkY)) {
+                    continue;
+                }
+                Canvas cached = editor == null || allDirty ? null : editor.getChunkCache().take(this, chunkX, chunkY, level);
+                if (cached != null) {
+                    chunks.put(getChunkIndex(chunkX, chunkY), cached);
+                    group.getChildren().add(cached);
+                } else {
+                    cells += repaintChunk(chunkX, chunkY);
+                }
+            }
+        }
+        minChunkX = minX;
+        minChunkY = minY;
+        maxChunkX = maxX;
+        maxChunkY = maxY;
+        return cells;
+    }
+    
+    private boolean isChunkVisible(int chunkX, int chunkY) {
+        return chunkX >= minChunkX && chunkX <= maxChunkX && chunkY >= minChunkY && chunkY <= maxChunkY;
+    }
+    
+    private int repaintChunk(int chunkX, int chunkY) {
+        int startX = chunkX * getChunkSpan(), startY = chunkY * getChunkSpan();
+        return repaintRegion(chunkX, chunkY, startX, startY,
+                Math.min(startX + getChunkSpan(), layer.getColumns()) - 1,
+                Math.min(startY + getChunkSpan(), layer.getRows()) - 1);
+    }
+    
+    /**
+     * Paints a rectangle of cells within a single chunk again.
+     *
+     * @return the amount of cells that were painted
+     */
+    private int repaintRegion(int chunkX, int chunkY, int minX, int minY, int maxX, int maxY) {
+        int startX = chunkX * getChunkSpan(), startY = chunkY * getChunkSpan();
+        Canvas canvas = chunks.get(getChunkIndex(chunkX, chunkY));
+        if (level != 0) {
+            paintMipped(chunkX, chunkY, canvas, minX, minY, maxX, maxY);
+            return (maxX - minX + 1) * (maxY - minY + 1);
+        }
+        
+        GraphicsContext graphics = canvas == null ? null : canvas.getGraphicsContext2D();
+        if (graphics != null) {
+            graphics.clearRect((minX - startX) * layer.getTileWidth(), (minY - startY) * layer.getTileHeight(),
+                    (maxX - minX + 1) * layer.getTileWidth(), (maxY - minY + 1) * layer.getTileHeight());
+        }
+        
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int value = layer.getCell(x, y);
+                if (value == LayerStorage.EMPTY) {
+                    continue;
+                }
+                if (graphics == null) {
+                    graphics = getOrCreateChunk(chunkX, chunkY).getGraphicsContext2D();
+                }
+                layer.paintCell(graphics, value, (x - startX) * layer.getTileWidth(), (y - startY) * layer.getTileHeight());
+            }
+        }
+        return (maxX - minX + 1) * (maxY - minY + 1);
+    }
+    
+    /**
+     * Writes the pixels that cover a region of a chunk below full detail, from the mip chains of its cells.
+     * Every pixel covers 2^level by 2^level pixels of the layer, and takes the pixel of the mip chain of the cell
+     * at its top left corner that covers the same part of the cell.
+     */
+    private void paintMipped(int chunkX, int chunkY, Canvas canvas, int minX, int minY, int maxX, int maxY) {
+        int tileWidth = layer.getTileWidth(), tileHeight = layer.getTileHeight();
+        int startX = chunkX * getChunkSpan(), startY = chunkY * getChunkSpan();
+        int fromPixelX = (int) (((long) (minX - startX) * tileWidth) >> level);
+        int toPixelX = (int) ((((long) (maxX - startX + 1) * tileWidth) + (1 << level) - 1) >> level);
+        int fromPixelY = (int) (((long) (minY - startY) * tileHeight) >> level);
+        int toPixelY = (int) ((((long) (maxY - startY + 1) * tileHeight) + (1 << level) - 1) >> level);
+        int width = toPixelX - fromPixelX, height = toPixelY - fromPixelY;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        
+        //The cell under the left edge of every column of pixels, and the position of that edge in the cell
+        int[] cellXs = new int[width], cellYs = new int[height], insideX = new int[width], insideY = new int[height];
+        for (int i = 0; i < width; i++) {
+            long layerX = ((long) startX * tileWidth) + ((long) (fromPixelX + i) << level);
+            cellXs[i] = (int) Math.min(layerX / tileWidth, layer.getColumns() - 1);
+            insideX[i] = (int) (layerX % tileWidth);
+        }
+        for (int i = 0; i < height; i++) {
+            long layerY = ((long) startY * tileHeight) + ((long) (fromPixelY + i) << level);
+            cellYs[i] = (int) Math.min(layerY / tileHeight, layer.getRows() - 1);
+            insideY[i] = (int) (layerY % tileHeight);
+        }
+        
+        //Cell values that have no mip chain yet are painted together, a single snapshot for all of them
+        IntArray missing = new IntArray();
+        for (int j = 0; j < height; j++) {
+            int previousX = -1;
+            for (int i = 0; i < width; i++) {
+                if (cellXs[i] == previousX) {
+                    continue;
+                }
+                previousX = cellXs[i];
+                int value = layer.getCell(previousX, cellYs[j]);
+                if (value != LayerStorage.EMPTY && !cellMips.containsKey(value) && !missing.contains(value)) {
+                    missing.add(value);
+                }
+            }
+        }
+        loadMips(missing);
+        
+        int mipLevel = Math.min(level, getMipLevels() - 1);
+        int mipWidth = mipSize(tileWidth, mipLevel), mipHeight = mipSize(tileHeight, mipLevel);
+        int[] pixels = new int[width * height];
+        boolean painted = false;
+        for (int j = 0; j < height; j++) {
+            int row = Math.min(insideY[j] >> mipLevel, mipHeight - 1) * mipWidth;
+            int previousX = -1;
+            int[] mip = null;
+            for (int i = 0; i < width; i++) {
+                if (cellXs[i] != previousX) {
+                    previousX = cellXs[i];
+                    int value = layer.getCell(previousX, cellYs[j]);
+                    mip = value == LayerStorage.EMPTY ? null : cellMips.get(value)[mipLevel];
+                }
+                if (mip != null) {
+                    int argb = mip[row + Math.min(insideX[i] >> mipLevel, mipWidth - 1)];
+                    pixels[(j * width) + i] = argb;
+                    painted |= argb != 0;
+                }
+            }
+        }
+        
+        if (canvas == null) {
+            if (!painted) {
+                return;
+            }
+            canvas = getOrCreateChunk(chunkX, chunkY);
+        }
+        //Pixels are replaced rather than blended, which also clears whatever was there before
+        canvas.getGraphicsContext2D().getPixelWriter().setPixels(fromPixelX, fromPixelY, width, height,
+                PixelFormat.getIntArgbInstance(), pixels, 0, width);
+    }
+    
+    /**
+     * Builds the mip chains of the given cell values. The cells are painted side by side onto sheets,
+     * and every sheet is turned into pixels with a single snapshot.
+     */
+    private void loadMips(IntArray values) {
+        int tileWidth = layer.getTileWidth(), tileHeight = layer.getTileHeight();
+        int perRow = Math.max(1, MAX_SHEET_SIZE / tileWidth), perSheet = perRow * Math.max(1, MAX_SHEET_SIZE / tileHeight);
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        
+        for (int first = 0; first < values.size; first += perSheet) {
+            int count = Math.min(perSheet, values.size - first);
+            Canvas sheet = new Canvas(Math.min(count, perRow) * tileWidth, ((count + perRow - 1) / perRow) * tileHeight);
+            GraphicsContext graphics = sheet.getGraphicsContext2D();
+            for (int i = 0; i < count; i++) {
+                int x = (i % perRow) * tileWidth, y = (i / perRow) * tileHeight;
+                //Clipped, so a cell that paints outside of its bounds doesn't bleed into the next one
+                graphics.save();
+                graphics.beginPath();
+                graphics.rect(x, y, tileWidth, tileHeight);
+                graphics.clip();
+                layer.paintCell(graphics, values.get(first + i), x, y);
+                graphics.restore();
+            }
+            
+            PixelReader reader = sheet.snapshot(parameters, null).getPixelReader();
+            for (int i = 0; i < count; i++) {
+                int[] pixels = new int[tileWidth * tileHeight];
+                reader.getPixels((i % perRow) * tileWidth, (i / perRow) * tileHeight, tileWidth, tileHeight,
+                        PixelFormat.getIntArgbInstance(), pixels, 0, tileWidth);
+                cellMips.put(values.get(first + i), buildMips(pixels));
+            }
+        }
+    }
+    
+    /**
+     * @return the pixels of a cell at every level of the mip chain, each level downscaled from the one before
+     */
+    private int[][] buildMips(int[] pixels) {
+        int[][] mips = new int[getMipLevels()][];
+        mips[0] = pixels;
+        for (int mipLevel = 1; mipLevel < mips.length; mipLevel++) {
+            mips[mipLevel] = downscale(mips[mipLevel - 1],
+                    mipSize(layer.getTileWidth(), mipLevel - 1), mipSize(layer.getTileHeight(), mipLevel - 1));
+        }
+        return mips;
+    }
+    
+    /**
+     * Halves the size of an image, rounding up, by averaging every 2 by 2 pixels weighted by their alpha.
+     */
+    private static int[] downscale(int[] source, int width, int height) {
+        int scaledWidth = (width + 1) / 2, scaledHeight = (height + 1) / 2;
+        int[] scaled = new int[scaledWidth * scaledHeight];
+        for (int y = 0; y < scaledHeight; y++) {
+            for (int x = 0; x < scaledWidth; x++) {
+                long alpha = 0, red = 0, green = 0, blue = 0;
+                int count = 0;
+                for (int sourceY = y * 2; sourceY < Math.min((y * 2) + 2, height); sourceY++) {
+                    for (int sourceX = x * 2; sourceX < Math.min((x * 2) + 2, width); sourceX++) {
+                        int argb = source[(sourceY * width) + sourceX];
+                        int a = argb >>> 24;
+                        alpha += a;
+                        red += ((argb >> 16) & 0xFF) * a;
+                        green += ((argb >> 8) & 0xFF) * a;
+                        blue += (argb & 0xFF) * a;
+                        count++;
+                    }
+                }
+                if (alpha != 0) {
+                    scaled[(y * scaledWidth) + x] = (int) (alpha / count) << 24 | (int) (red / alpha) << 16
+                            | (int) (green / alpha) << 8 | (int) (blue / alpha);
+                }
+            }
+        }
+        return scaled;
+    }
+    
+    /**
+     * @return the amount of levels in the mip chain of a cell, until it is a single pixel or the deepest level of detail
+     */
+    private int getMipLevels() {
+        int levels = 1;
+        while (levels <= MAX_LEVEL && (mipSize(layer.getTileWidth(), levels - 1) > 1 || mipSize(layer.getTileHeight(), levels - 1) > 1)) {
+            levels++;
+        }
+        return levels;
+    }
+    
+    /**
+     * @return the width or height of a cell at the given level of its mip chain
+     */
+    private static int mipSize(int size, int mipLevel) {
+        for (int i = 0; i < mipLevel; i++) {
+            size = (size + 1) / 2;
+        }
+        return size;
+    }
+    
+    private Canvas getOrCreateChunk(int chunkX, int chunkY) {
+        int index = getChunkIndex(chunkX, chunkY);
+        Canvas canvas = chunks.get(index);
+        if (canvas == null) {
+            int startX = chunkX * getChunkSpan(), startY = chunkY * getChunkSpan();
+            int columns = Math.min(getChunkSpan(), layer.getColumns() - startX);
+            int rows = Math.min(getChunkSpan(), layer.getRows() - startY);
+            canvas = new Canvas(Math.ceil(((long) columns * layer.getTileWidth()) / (double) (1 << level)),
+                    Math.ceil(((long) rows * layer.getTileHeight()) / (double) (1 << level)));
+            canvas.setLayoutX(startX * (double) layer.getTileWidth());
+            canvas.setLayoutY(startY * (double) layer.getTileHeight());
+            if (level != 0) {
+                //The canvas has the pixels of a chunk at full detail, scaled up to cover all of its cells
+                canvas.getTransforms().add(new Scale(1 << level, 1 << level, 0, 0));
+            }
+            //Canvases only ever show tiles, the mouse events belong to the viewport
+            canvas.setMouseTransparent(true);
+            chunks.put(index, canvas);
+            group.getChildren().add(canvas);
+        }
+        return canvas;
+    }
+    
+    /**
+     * @return the amount of cells per side of a chunk at the current level of detail
+     */
+    private int getChunkSpan() {
+        return CHUNK_SIZE << level;
+    }
+    
+    private int getChunkIndex(int chunkX, int chunkY) {
+        return (chunkY * getChunkColumns()) + chunkX;
+    }
+    
+    private int getChunkColumns() {
+        return (layer.getColumns() + getChunkSpan() - 1) / getChunkSpan();
+    }
+    
+    private int getChunkRows() {
+        return (layer.getRows() + getChunkSpan() - 1) / getChunkSpan();
+    }
+    
+}
@@ -3,6 +3,7 @@ package com.ktar5.jazzy.editor.tilemap;
 import com.ktar5.jazzy.editor.util.Drawable;
 import javafx.scene.layout.Pane;
 import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.util.ArrayList;
 
@@ -22,6 +23,45 @@ public class Layers implements Drawable {
         }
     }
     
+    /**
+     * Repaints every layer before the next frame, see {@link BaseLayer#repaint()}.
+     */
+    public void repaint() {
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).repaint();
+        }
+    }
+    
+    public void add(BaseLayer layer) {
+        layer.setIndex(layers.size());
+        layers.add(layer);
+    }
+    
+    public BaseLayer get(int index) {
+        return layers.get(index);
+    }
+    
+    /**
+     * @return the position of the given layer, or -1 if it isn't one of these layers
+     */
+    public int indexOf(BaseLayer layer) {
+        return layers.indexOf(layer);
+    }
+    
+    public int size() {
+        return layers.size();
+    }
+    
+    /**
+     * Creates a layer for every entry in the "layers" section of a serialized tilemap.
+     */
+    public void deserialize(JSONArray json) {
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject layer = json.getJSONObject(i);
+            add(parent.deserializeLayer(layer));
+        }
+    }
+    
     public JSONArray serialize() {
         JSONArray json = new JSONArray();
         for (int i = 0; i < layers.size(); i++) {
@@ -29,4 +69,15 @@ public class Layers implements Drawable {
         }
         return json;
     }
+    
+    /**
+     * @return the serialization of every layer, without the "tilemap" sections
+     */
+    public JSONArray serializeHeaders() {
+        JSONArray json = new JSONArray();
+        for (int i = 0; i < layers.size(); i++) {
+            json.put(i, layers.get(i).serializeHeader());
+        }
+        return json;
+    }
 }
@@ -1,13 +1,29 @@
 package com.ktar5.jazzy.editor.tilemap;
 
 import com.ktar5.jazzy.editor.coordination.EditorCoordinator;
+import com.ktar5.jazzy.editor.gui.centerview.tabs.AbstractTab;
 import com.ktar5.jazzy.editor.gui.centerview.tabs.TilemapTab;
 import com.ktar5.jazzy.editor.gui.dialogs.CreateBaseTilemap;
 import com.ktar5.jazzy.editor.gui.dialogs.GenericAlert;
 import com.ktar5.jazzy.editor.gui.dialogs.LoadDialog;
 import com.ktar5.jazzy.editor.gui.dialogs.SelectType;
+import com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat;
+import com.ktar5.jazzy.editor.tilemap.io.JsonTilemapWriter;
+import com.ktar5.jazzy.editor.tilemap.io.RecoveryJournal;
+import com.ktar5.jazzy.editor.tilemap.io.TilemapReader;
+import com.ktar5.jazzy.editor.tilemap.io.TilemapWriter;
 import com.ktar5.jazzy.editor.tilemap.whole.WholeTileLayer;
-import com.ktar5.jazzy.editor.util.StringUtil;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import com.ktar5.jazzy.editor.util.BackgroundSaver;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import javafx.util.Pair;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.pmw.tinylog.Configurator;
 import org.pmw.tinylog.Level;
@@ -15,23 +31,36 @@ import org.pmw.tinylog.Logger;
 import org.pmw.tinylog.writers.ConsoleWriter;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Optional;
 import java.util.UUID;
 
 public class MapManager {
+    //How often the unsaved state of open maps is journaled for crash recovery
+    private static final Duration AUTOSAVE_INTERVAL = Duration.seconds(5);
     private static MapManager instance;
     private HashMap<UUID, BaseTilemap> openMaps;
+    private HashMap<UUID, Pair<File, TilemapWriter>> writers;
+    private HashMap<UUID, RecoveryJournal> journals;
+    private Timeline autosave;
     private ArrayList<Class<? extends BaseTilemap>> registeredMapTypes;
+    //Recovered maps that were restored, discarded or failed to restore, so they're only offered once per session
+    private HashSet<UUID> handledRecoveries;
+    //Set once recovered maps have been offered, after that every newly registered type offers the maps of its type
+    private boolean recoveryOffered;
     
     public MapManager() {
         instance = this;
         registeredMapTypes = new ArrayList<>();
         openMaps = new HashMap<>();
+        writers = new HashMap<>();
+        journals = new HashMap<>();
+        handledRecoveries = new HashSet<>();
         
         //Initialize tinylog
         Configurator.defaultConfig()
@@ -60,6 +89,10 @@ public class MapManager {
     public <T extends BaseTilemap> void registerTilemapClass(Class<? extends T> clazz) {
         registeredMapTypes.add(clazz);
         Logger.debug("Registered tilemap class: " + clazz.getName());
+        if (recoveryOffered) {
+            //Plugins register their types after startup, their recovered maps were kept until now
+            restoreRecoveredMaps();
+        }
     }
     
     /**
@@ -68,7 +101,13 @@ public class MapManager {
     public void remove(UUID uuid) {
         if (this.openMaps.containsKey(uuid)) {
             Logger.debug("Removed tilemap: " + getMap(uuid).getName());
+            getMap(uuid).getTilesets().release();
             openMaps.remove(uuid);
+            writers.remove(uuid);
+            RecoveryJournal journal = journals.remove(uuid);
+            if (journal != null) {
+                BackgroundSaver.get().saveQuietly("recovery journal", journal.discard());
+            }
         }
     }
     
@@ -126,6 +165,8 @@ public class MapManager {
         
         openMaps.put(tilemap.getId(), tilemap);
         EditorCoordinator.get().getEditor().addTab(new TilemapTab.WholeTilemapTab(tilemap.getId()));
+        //Layers only paint edits once they have been drawn into the tab
+        tilemap.draw(EditorCoordinator.get().getEditor().getTabDrawingPane(tilemap.getId()));
         return tilemap;
     }
     
@@ -147,7 +188,7 @@ public class MapManager {
      * @return the tilemap of type <T> that has been instantiated, otherwise null
      */
     public <T extends BaseTilemap> T loadMap(Class<? extends T> clazz) {
-        File loaderFile = LoadDialog.create("Load a tilemap", "Json Tilemap File", "*.json");
+        File loaderFile = LoadDialog.create("Load a tilemap", "Tilemap File", "*." + BinaryTilemapFormat.EXTENSION, "*.json");
         if (loaderFile == null) {
             Logger.info("Tried to load map, cancelled or failed");
             return null;
@@ -158,18 +199,19 @@ public class MapManager {
         
         Logger.info("Beginning to load map from file: " + loaderFile.getPath());
         
-        String data = StringUtil.readFileAsString(loaderFile);
-        if (data == null || data.isEmpty()) {
-            Logger.error("Data from file: " + loaderFile.getPath() + " is either null or empty.");
+        if (loaderFile.length() == 0) {
+            Logger.error("Data from file: " + loaderFile.getPath() + " is empty.");
             return null;
         }
         
         T tilemap;
-        try {
-            Constructor<? extends T> constructor = clazz.getConstructor(File.class, JSONObject.class);
-            tilemap = constructor.newInstance(loaderFile, new JSONObject(data));
-        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException e) {
-            e.printStackTrace();
+        try (TilemapReader reader = TilemapReader.open(loaderFile)) {
+            tilemap = readMap(clazz, loaderFile, reader);
+        } catch (IOException | JSONException e) {
+            Logger.error(e, "Could not read tilemap from file: " + loaderFile.getPath());
+            return null;
+        }
+        if (tilemap == null) {
             return null;
         }
         
@@ -179,12 +221,143 @@ public class MapManager {
                 return clazz.isInstance(temp) ? (T) temp : null;
             }
         }
+        openMap(tilemap);
+        
+        Logger.info("Finished loading map: " + tilemap.getName());
+        return tilemap;
+    }
+    
+    /**
+     * Instantiates a tilemap using its serialization constructor, and decodes its cells.
+     *
+     * @param saveFile the file the tilemap will be saved to
+     * @return the tilemap, or null if it couldn't be instantiated
+     */
+    private <T extends BaseTilemap> T readMap(Class<? extends T> clazz, File saveFile, TilemapReader reader) throws IOException {
+        try {
+            Constructor<? extends T> constructor = clazz.getConstructor(File.class, JSONObject.class);
+            T tilemap = constructor.newInstance(saveFile, reader.readHeader());
+            reader.readLayers(tilemap);
+            return tilemap;
+        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    private void openMap(BaseTilemap tilemap) {
         openMaps.put(tilemap.getId(), tilemap);
         EditorCoordinator.get().getEditor().addTab(tilemap.getNewTilemapTab());
         tilemap.draw(EditorCoordinator.get().getEditor().getTabDrawingPane(tilemap.getId()));
+    }
+    
+    /**
+     * Offers to restore every map that had unsaved edits when the editor last exited without closing it,
+     * usually after a crash. Restored maps are opened in a tab marked as changed, their save file is left untouched.
+     * <p>
+     * The recovery files of a map are only deleted once it has been restored, or its changes were discarded.
+     * Maps of a type that isn't registered yet, or that failed to restore, are kept for a later attempt.
+     */
+    public void restoreRecoveredMaps() {
+        recoveryOffered = true;
+        for (UUID recovered : RecoveryJournal.findRecoverable()) {
+            if (handledRecoveries.contains(recovered)) {
+                continue;
+            }
+            boolean discard = false;
+            try {
+                JSONObject info = RecoveryJournal.readInfo(recovered);
+                File saveFile = new File(info.getString("saveFile"));
+                Class<? extends BaseTilemap> clazz = null;
+                for (Class<? extends BaseTilemap> type : registeredMapTypes) {
+                    if (type.getName().equals(info.getString("type"))) {
+                        clazz = type;
+                    }
+                }
+                
+                if (clazz == null) {
+                    Logger.warn("Can't recover " + saveFile.getPath() + " yet, type " + info.getString("type") + " isn't registered");
+                    continue;
+                }
+                handledRecoveries.add(recovered);
+                discard = !confirmRestore(saveFile) || restoreMap(recovered, clazz, saveFile);
+            } catch (IOException | JSONException e) {
+                handledRecoveries.add(recovered);
+                Logger.error(e, "Could not recover tilemap: " + recovered + ", its recovery files are kept");
+                new GenericAlert("Could not recover unsaved changes:\n" + e.getMessage());
+            }
+            if (discard) {
+                BackgroundSaver.get().saveQuietly("recovery journal", RecoveryJournal.discard(recovered));
+            }
+        }
+    }
+    
+    private boolean confirmRestore(File saveFile) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Restore Unsaved Changes");
+        alert.setContentText("The editor exited before changes to " + saveFile.getName() + " were saved.\n" +
+                "Would you like to restore them?");
+        ButtonType restore = new ButtonType("Restore");
+        ButtonType discard = new ButtonType("Discard");
+        alert.getButtonTypes().setAll(restore, discard);
         
-        Logger.info("Finished loading map: " + tilemap.getName());
-        return tilemap;
+        Optional<ButtonType> result = alert.showAndWait();
+        return result.isPresent() && result.get() == restore;
+    }
+    
+    /**
+     * @return true if the map was restored, false if its recovery files should be kept
+     */
+    private boolean restoreMap(UUID recovered, Class<? extends BaseTilemap> clazz, File saveFile) throws IOException {
+        for (BaseTilemap temp : openMaps.values()) {
+            if (temp.getSaveFile().getAbsolutePath().equals(saveFile.getAbsolutePath())) {
+                new GenericAlert("Tilemap with path " + saveFile.getAbsolutePath() + " already loaded, can't restore it");
+                return false;
+            }
+        }
+        
+        BaseTilemap tilemap;
+        try (TilemapReader reader = RecoveryJournal.openBase(recovered)) {
+            tilemap = readMap(clazz, saveFile, reader);
+        }
+        if (tilemap == null) {
+            return false;
+        }
+        int checkpoints = RecoveryJournal.applyJournal(recovered, tilemap);
+        openMap(tilemap);
+        EditorCoordinator.get().getEditor().setChanges(tilemap.getId(), true);
+        //Journal the restored map under its new id right away, before the old files are discarded
+        autosave(tilemap);
+        Logger.info("Restored map: " + tilemap.getName() + " with " + checkpoints + " journaled checkpoints");
+        return true;
+    }
+    
+    /**
+     * Starts journaling the unsaved state of every open map in the background, see {@link RecoveryJournal}.
+     * Must be called on the JavaFX application thread.
+     */
+    public void startAutosave() {
+        if (autosave != null) {
+            return;
+        }
+        autosave = new Timeline(new KeyFrame(AUTOSAVE_INTERVAL, event -> {
+            for (BaseTilemap tilemap : openMaps.values()) {
+                AbstractTab tab = EditorCoordinator.get().getEditor().getTab(tilemap.getId());
+                if (tab != null && tab.getEdits()) {
+                    autosave(tilemap);
+                }
+            }
+        }));
+        autosave.setCycleCount(Animation.INDEFINITE);
+        autosave.play();
+    }
+    
+    private void autosave(BaseTilemap tilemap) {
+        RecoveryJournal journal = journals.computeIfAbsent(tilemap.getId(), RecoveryJournal::new);
+        BackgroundSaver.Save checkpoint = journal.checkpoint(tilemap);
+        if (checkpoint != null) {
+            BackgroundSaver.get().saveQuietly("recovery journal for " + tilemap.getName(), checkpoint);
+        }
     }
     
     /**
@@ -201,22 +374,59 @@ public class MapManager {
         }
         
         BaseTilemap baseTilemap = openMaps.get(id);
-        if (baseTilemap.getSaveFile().exists()) {
-            baseTilemap.getSaveFile().delete();
+        File saveFile = baseTilemap.getSaveFile();
+        //Writers keep state between saves of the same map, so they are only replaced when the file changes
+        Pair<File, TilemapWriter> writer = writers.get(id);
+        if (writer == null || !writer.getKey().equals(saveFile)) {
+            writer = new Pair<>(saveFile, TilemapWriter.forFile(saveFile));
+            writers.put(id, writer);
         }
         
-        try {
-            baseTilemap.getSaveFile().createNewFile();
-            FileWriter writer = new FileWriter(baseTilemap.getSaveFile());
-            writer.write(baseTilemap.serialize().toString(4));
-            EditorCoordinator.get().getEditor().setChanges(baseTilemap.getId(), false);
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        //Writing happens in the background, prepare captures everything that is needed for it
+        AtomicFileWriter.Output output = writer.getValue().prepare(baseTilemap);
+        AbstractTab tab = EditorCoordinator.get().getEditor().getTab(id);
+        int editCount = tab == null ? 0 : tab.getEditCount();
+        
+        BackgroundSaver.get().save(baseTilemap.getName(), () -> AtomicFileWriter.write(saveFile, output), () -> {
+            //Edits made while saving aren't in the file, so the tab has to stay marked as changed
+            AbstractTab savedTab = EditorCoordinator.get().getEditor().getTab(id);
+            if (savedTab != null && savedTab.getEditCount() == editCount) {
+                savedTab.setEdit(false);
+                //Everything is in the save file now, so there is nothing left to recover
+                RecoveryJournal journal = journals.get(id);
+                if (journal != null) {
+                    BackgroundSaver.get().saveQuietly("recovery journal", journal.discard());
+                }
+            }
+            Logger.info("Finished save for baseTilemap (" + id + ") in " + "\"" + saveFile + "\"");
+        });
+    }
+    
+    /**
+     * Exports a map with the UUID specified to a json file chosen in a "save file" dialog.
+     * The map keeps its own save file, this only writes a copy for use in other tools,
+     * so the rows are not run-length encoded.
+     *
+     * @param id the uuid of the map to be exported.
+     */
+    public void exportMap(UUID id) {
+        if (!openMaps.containsKey(id)) {
+            Logger.info("Map not loaded so could not be exported id: (" + id + ")");
+            return;
+        }
+        
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Tilemap As Json..");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Json File", "*.json"));
+        File exportFile = fileChooser.showSaveDialog(null);
+        if (exportFile == null) {
+            Logger.info("Tried to export map, cancelled or failed");
             return;
         }
         
-        Logger.info("Finished save for baseTilemap (" + id + ") in " + "\"" + baseTilemap.getSaveFile() + "\"");
+        AtomicFileWriter.Output output = new JsonTilemapWriter(false).prepare(openMaps.get(id));
+        BackgroundSaver.get().save(exportFile.getName(), () -> AtomicFileWriter.write(exportFile, output),
+                () -> Logger.info("Finished export for baseTilemap (" + id + ") in " + "\"" + exportFile + "\""));
     }
     
 }
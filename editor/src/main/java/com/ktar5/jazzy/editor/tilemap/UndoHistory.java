@@ -0,0 +1,238 @@
+package com.ktar5.jazzy.editor.tilemap;
+
+import java.util.Arrays;
+
+/**
+ * The undo and redo history of the cells of a tilemap.
+ * <p>
+ * Every change to a cell is logged as {layer, cell index, old value, new value}, four ints in one shared
+ * array, so undoing an edit only touches the cells it changed and never needs a copy of the layers.
+ * Changes made between {@link #begin()} and {@link #end()}, such as every cell of a drag stroke, are
+ * undone and redone together as one transaction. Changes made outside of a transaction are each their own.
+ * <p>
+ * The oldest transactions are forgotten once the log grows over {@link #MAX_SIZE} bytes. The newest
+ * transaction is always kept, even if it is bigger than that on its own.
+ */
+public class UndoHistory {
+    public static final long MAX_SIZE = 32L << 20;
+    //Layer, cell index, old value and new value
+    private static final int ENTRY_SIZE = 4;
+    private static final int MAX_ENTRIES = (int) (MAX_SIZE / (ENTRY_SIZE * 4));
+    
+    private final BaseTilemap parent;
+    private int[] log = new int[ENTRY_SIZE * 64];
+    private int logSize;
+    //The end of every transaction in the log, exclusive
+    private int[] transactionEnds = new int[16];
+    private int transactionCount;
+    //The amount of transactions that are applied, the rest can be redone
+    private int position;
+    //The depth of nested transactions, and the start of the one that is open
+    private int depth, transactionStart;
+    //Set while the history itself changes cells, so undoing isn't logged as an edit
+    private boolean applying;
+    
+    public UndoHistory(BaseTilemap parent) {
+        this.parent = parent;
+    }
+    
+    /**
+     * Starts a transaction, which lasts until the matching call to {@link #end()}.
+     * Transactions can be nested, everything up to the outermost end is a single transaction.
+     */
+    public void begin() {
+        if (depth++ == 0) {
+            transactionStart = logSize;
+        }
+    }
+    
+    /**
+     * Ends the transaction started by the matching call to {@link #begin()}.
+     */
+    public void end() {
+        if (depth == 0) {
+            return;
+        }
+        if (--depth == 0) {
+            close();
+        }
+    }
+    
+    /**
+     * Logs a change to a cell. Called by {@link BaseLayer} whenever the value of a cell changes.
+     *
+     * @param layerIndex the position of the layer in the layers of the tilemap, see {@link BaseLayer#getIndex()}
+     */
+    void record(int layerIndex, int cellIndex, int oldValue, int newValue) {
+        if (applying) {
+            return;
+        }
+        boolean single = depth == 0;
+        if (single) {
+            begin();
+        }
+        if (logSize == transactionStart && position < transactionCount) {
+            //A new edit makes everything that was undone impossible to redo
+            transactionCount = position;
+            logSize = transactionStart = position == 0 ? 0 : transactionEnds[position - 1];
+        }
+        if (logSize + ENTRY_SIZE > log.length) {
+            log = Arrays.copyOf(log, log.length * 2);
+        }
+        log[logSize] = layerIndex;
+        log[logSize + 1] = cellIndex;
+        log[logSize + 2] = oldValue;
+        log[logSize + 3] = newValue;
+        logSize += ENTRY_SIZE;
+        if (single) {
+            end();
+        }
+    }
+    
+    /**
+     * Turns the open transaction into one that can be undone, unless it didn't change anything.
+     */
+    private void close() {
+        if (logSize == transactionStart) {
+            return;
+        }
+        if (transactionCount == transactionEnds.length) {
+            transactionEnds = Arrays.copyOf(transactionEnds, transactionEnds.length * 2);
+        }
+        transactionEnds[transactionCount++] = logSize;
+        position = transactionCount;
+        trim();
+    }
+    
+    /**
+     * Forgets the oldest transactions until the log fits in its budget, or only the newest is left.
+     * Drops down to three quarters of the budget, so a full log isn't shifted on every edit.
+     */
+    private void trim() {
+        if (logSize / ENTRY_SIZE <= MAX_ENTRIES) {
+            return;
+        }
+        int target = (MAX_ENTRIES / 4) * 3 * ENTRY_SIZE;
+        int dropped = 0;
+        while (dropped < transactionCount - 1 && logSize - (dropped == 0 ? 0 : transactionEnds[dropped - 1]) > target) {
+            dropped++;
+        }
+        if (dropped == 0) {
+            return;
+        }
+        int offset = transactionEnds[dropped - 1];
+        System.arraycopy(log, offset, log, 0, logSize - offset);
+        logSize -= offset;
+        for (int i = dropped; i < transactionCount; i++) {
+            transactionEnds[i - dropped] = transactionEnds[i] - offset;
+        }
+        transactionCount -= dropped;
+        position -= dropped;
+        transactionStart = logSize;
+        if (log.length > ENTRY_SIZE * 64 && logSize < log.length / 4) {
+            log = Arrays.copyOf(log, Math.max(ENTRY_SIZE * 64, log.length / 2));
+        }
+    }
+    
+    public boolean canUndo() {
+        return position > 0;
+    }
+    
+    public boolean canRedo() {
+        return position < transactionCount;
+    }
+    
+    /**
+     * Reverts the cells of the last applied transaction, closing any transaction that is still open first.
+     *
+     * @return true if there was anything to undo
+     */
+    public boolean undo() {
+        closeOpen();
+        if (!canUndo()) {
+            return false;
+        }
+        replay(position == 1 ? 0 : transactionEnds[position - 2], transactionEnds[position - 1], true);
+        position--;
+        return true;
+    }
+    
+    /**
+     * Applies the cells of the first transaction that was undone again.
+     *
+     * @return true if there was anything to redo
+     */
+    public boolean redo() {
+        closeOpen();
+        if (!canRedo()) {
+            return false;
+        }
+        replay(position == 0 ? 0 : transactionEnds[position - 1], transactionEnds[position], false);
+        position++;
+        return true;
+    }
+    
+    /**
+     * Forgets every transaction, for changes that can't be undone cell by cell.
+     */
+    public void clear() {
+        logSize = transactionStart = 0;
+        transactionCount = position = 0;
+        log = new int[ENTRY_SIZE * 64];
+    }
+    
+    /**
+     * @return the amount of bytes the log currently takes up
+     */
+    public long getMemoryUsage() {
+        return ((long) log.length + transactionEnds.length) * 4;
+    }
+    
+    //A stroke that never got its end, like one released outside of the tab, is finished here
+    private void closeOpen() {
+        if (depth > 0) {
+            depth = 0;
+            close();
+        }
+    }
+    
+    /**
+     * Sets the cells of the log entries between start and end back to their old values, or to their new ones.
+     * Every layer gets its cells in a single {@link BaseLayer#batch(Runnable)}, so it is repainted and
+     * marked as changed once, instead of once per cell.
+     */
+    private void replay(int start, int end, boolean undo) {
+        boolean[] replayed = new boolean[parent.getLayers().size()];
+        applying = true;
+        try {
+            for (int i = start; i < end; i += ENTRY_SIZE) {
+                int layerIndex = log[i];
+                if (replayed[layerIndex]) {
+                    continue;
+                }
+                replayed[layerIndex] = true;
+                BaseLayer layer = parent.getLayers().get(layerIndex);
+                int columns = layer.getColumns();
+                layer.batch(() -> {
+                    if (undo) {
+                        //Backwards, so a cell changed twice ends up with the value it had before the first change
+                        for (int j = end - ENTRY_SIZE; j >= start; j -= ENTRY_SIZE) {
+                            if (log[j] == layerIndex) {
+                                layer.setCell(log[j + 1] % columns, log[j + 1] / columns, log[j + 2]);
+                            }
+                        }
+                    } else {
+                        for (int j = start; j < end; j += ENTRY_SIZE) {
+                            if (log[j] == layerIndex) {
+                                layer.setCell(log[j + 1] % columns, log[j + 1] / columns, log[j + 3]);
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            applying = false;
+        }
+    }
+    
+}
@@ -0,0 +1,173 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and primitive encodings of the binary tilemap format. A file is laid out as:
+ * <pre>
+ * magic    4 bytes, "JZMP"
+ * version  varint
+ * header   json value, the tilemap serialization with the "tilemap" section of every layer left out
+ * layers   for every entry of the "layers" array in the header:
+ *              columns    varint
+ *              rows       varint
+ *              chunkShift varint, chunks are 2^chunkShift cells per side
+ *              chunks     for every chunk, row by row:
+ *                             size varint, the amount of bytes that follow, 0 for an empty chunk
+ *                             runs (length varint, value varint) pairs, in row-major order within
+ *                                  the chunk, covering every cell of the chunk that is inside the layer
+ * </pre>
+ * Chunks are encoded independently so that a writer can reuse the bytes of chunks that haven't
+ * changed since the last save. Version 1 files stored the runs of a whole layer after its
+ * columns and rows, without chunks.
+ * The header carries the dimensions, properties and layer settings exactly like the json format does,
+ * so both formats are loaded through the same serialization constructors. Cell values are the
+ * packed values of the layer storage, where 0 is an empty cell.
+ * <p>
+ * Keep this in sync with JazzyMapReader in the libgdx module.
+ */
+public final class BinaryTilemapFormat {
+    public static final int MAGIC = ('J' << 24) | ('Z' << 16) | ('M' << 8) | 'P';
+    public static final int VERSION = 2;
+    public static final String EXTENSION = "jmap";
+    
+    //Tags of the json values in the header
+    static final int TAG_NULL = 0, TAG_FALSE = 1, TAG_TRUE = 2, TAG_INT = 3, TAG_LONG = 4,
+            TAG_DOUBLE = 5, TAG_STRING = 6, TAG_OBJECT = 7, TAG_ARRAY = 8;
+    
+    private BinaryTilemapFormat() {
+    }
+    
+    /**
+     * @return true if the file starts with the magic number of the binary format
+     */
+    public static boolean isBinary(File file) throws IOException {
+        if (file.length() < 4) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return input.readInt() == MAGIC;
+        }
+    }
+    
+    /**
+     * Writes an unsigned LEB128 varint, which takes 1 byte for values below 128.
+     * Negative values are treated as unsigned and take 5 bytes.
+     */
+    static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+    
+    static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+    
+    static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[readVarInt(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Writes a value of a json tree, as found in {@link JSONObject} and {@link JSONArray}.
+     */
+    static void writeJson(DataOutput output, Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            output.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte(TAG_INT);
+            output.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            output.writeByte(TAG_LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Number) {
+            output.writeByte(TAG_DOUBLE);
+            output.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            JSONObject json = (JSONObject) value;
+            output.writeByte(TAG_OBJECT);
+            writeVarInt(output, json.length());
+            for (String key : json.keySet()) {
+                writeString(output, key);
+                writeJson(output, json.get(key));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray json = (JSONArray) value;
+            output.writeByte(TAG_ARRAY);
+            writeVarInt(output, json.length());
+            for (int i = 0; i < json.length(); i++) {
+                writeJson(output, json.get(i));
+            }
+        } else {
+            output.writeByte(TAG_STRING);
+            writeString(output, value.toString());
+        }
+    }
+    
+    static Object readJson(DataInput input) throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return JSONObject.NULL;
+            case TAG_FALSE:
+                return false;
+            case TAG_TRUE:
+                return true;
+            case TAG_INT:
+                return input.readInt();
+            case TAG_LONG:
+                return input.readLong();
+            case TAG_DOUBLE:
+                return input.readDouble();
+            case TAG_STRING:
+                return readString(input);
+            case TAG_OBJECT: {
+                JSONObject json = new JSONObject();
+                for (int i = readVarInt(input); i > 0; i--) {
+                    String key = readString(input);
+                    json.put(key, readJson(input));
+                }
+                return json;
+            }
+            case TAG_ARRAY: {
+                JSONArray json = new JSONArray();
+                for (int i = readVarInt(input); i > 0; i--) {
+                    json.put(readJson(input));
+                }
+                return json;
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+    
+}
@@ -0,0 +1,129 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat.readJson;
+import static com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat.readVarInt;
+
+/**
+ * Reads tilemaps in the binary format described in {@link BinaryTilemapFormat}.
+ * Unlike the json format this is a single pass, since the header comes before the cells.
+ */
+public class BinaryTilemapReader implements TilemapReader {
+    private final File file;
+    private final DataInputStream input;
+    private int version;
+    private int layerCount = -1;
+    
+    public BinaryTilemapReader(File file) throws IOException {
+        this.file = file;
+        this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+    
+    @Override
+    public JSONObject readHeader() throws IOException {
+        if (input.readInt() != BinaryTilemapFormat.MAGIC) {
+            throw new IOException("File: " + file.getPath() + " is not a binary tilemap");
+        }
+        version = readVarInt(input);
+        if (version > BinaryTilemapFormat.VERSION) {
+            throw new IOException("File: " + file.getPath() + " was saved in format version " + version +
+                    ", but only versions up to " + BinaryTilemapFormat.VERSION + " are supported");
+        }
+        
+        Object header = readJson(input);
+        if (!(header instanceof JSONObject)) {
+            throw new IOException("File: " + file.getPath() + " has a malformed header");
+        }
+        JSONObject json = (JSONObject) header;
+        layerCount = json.has("layers") ? json.getJSONArray("layers").length() : 0;
+        return json;
+    }
+    
+    @Override
+    public void readLayers(BaseTilemap tilemap) throws IOException {
+        if (layerCount == -1) {
+            throw new IllegalStateException("The header must be read before the layers");
+        }
+        if (tilemap.getLayers().size() < layerCount) {
+            //The cells of every layer follow each other, so a layer can't be skipped without decoding it
+            throw new IOException("File: " + file.getPath() + " has " + layerCount + " layers, but the tilemap only created "
+                    + tilemap.getLayers().size());
+        }
+        for (int i = 0; i < layerCount; i++) {
+            readCells(tilemap.getLayers().get(i));
+        }
+    }
+    
+    private void readCells(BaseLayer layer) throws IOException {
+        int columns = readVarInt(input), rows = readVarInt(input);
+        if (columns != layer.getColumns() || rows != layer.getRows()) {
+            throw new IOException("Layer: " + layer.getName() + " was saved as " + columns + "x" + rows +
+                    " but is " + layer.getColumns() + "x" + layer.getRows());
+        }
+        
+        if (version == 1) {
+            int total = columns * rows;
+            for (int index = 0; index < total; ) {
+                int length = readRunLength(input, layer, total - index), value = readVarInt(input);
+                layer.deserializeRun(index, length, value);
+                index += length;
+            }
+            return;
+        }
+        
+        int chunkShift = readVarInt(input);
+        if (chunkShift > 15) {
+            throw new IOException("Layer: " + layer.getName() + " has malformed chunks of size 2^" + chunkShift);
+        }
+        int size = 1 << chunkShift;
+        for (int chunkY = 0; chunkY < rows; chunkY += size) {
+            for (int chunkX = 0; chunkX < columns; chunkX += size) {
+                if (readVarInt(input) != 0) {
+                    readChunk(input, layer, chunkX, chunkY, Math.min(size, columns - chunkX), Math.min(size, rows - chunkY));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Decodes the runs of a single chunk into the given region of a layer. Empty cells are skipped,
+     * so the region has to be empty already.
+     */
+    static void readChunk(DataInput input, BaseLayer layer, int startX, int startY, int width, int height) throws IOException {
+        int total = width * height;
+        for (int index = 0; index < total; ) {
+            int length = readRunLength(input, layer, total - index), value = readVarInt(input);
+            if (value != LayerStorage.EMPTY) {
+                for (int i = index; i < index + length; i++) {
+                    layer.deserializeCell(startX + (i % width), startY + (i / width), value);
+                }
+            }
+            index += length;
+        }
+    }
+    
+    private static int readRunLength(DataInput input, BaseLayer layer, int remaining) throws IOException {
+        int length = readVarInt(input);
+        if (length <= 0 || length > remaining) {
+            throw new IOException("Layer: " + layer.getName() + " has a malformed run of " + length + " cells");
+        }
+        return length;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+    
+}
@@ -0,0 +1,30 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import org.json.JSONObject;
+
+import java.io.DataOutputStream;
+
+/**
+ * Writes tilemaps in the binary format described in {@link BinaryTilemapFormat}.
+ * <p>
+ * Every layer is written as a sequence of independently encoded chunks. The writer keeps
+ * the encoded chunks between saves, so a save only encodes the chunks that were edited
+ * since the previous one and copies the rest, see {@link EncodedTilemap}.
+ * A writer must therefore only ever be used for a single tilemap.
+ */
+public class BinaryTilemapWriter implements TilemapWriter {
+    private final EncodedTilemap encoded = new EncodedTilemap();
+    
+    @Override
+    public AtomicFileWriter.Output prepare(BaseTilemap tilemap) {
+        JSONObject header = tilemap.serializeHeader();
+        header.put("layers", tilemap.getLayers().serializeHeaders());
+        
+        encoded.update(tilemap, null);
+        EncodedTilemap.EncodedLayer[] layers = encoded.snapshot();
+        return output -> EncodedTilemap.write(new DataOutputStream(output), header, layers);
+    }
+    
+}
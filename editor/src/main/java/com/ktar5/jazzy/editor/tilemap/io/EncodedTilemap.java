@@ -0,0 +1,197 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat.writeJson;
+import static com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat.writeVarInt;
+
+/**
+ * The chunks of every layer of a tilemap, encoded as described in {@link BinaryTilemapFormat}.
+ * <p>
+ * The encoded chunks are kept between updates along with the revision of the chunk they were
+ * encoded from (see {@link BaseLayer#getChunkRevision(int)}), so an update only encodes the chunks
+ * that were edited since the previous one. Every instance must only be used for a single tilemap,
+ * and only on the JavaFX application thread.
+ */
+class EncodedTilemap {
+    private static final byte[] EMPTY_CHUNK = new byte[0];
+    
+    private final List<EncodedLayer> layers = new ArrayList<>();
+    //Reused to encode chunks
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream bufferOutput = new DataOutputStream(buffer);
+    
+    /**
+     * Encodes every chunk that was edited since the last update.
+     *
+     * @param listener called for every chunk that was encoded again, may be null
+     * @return false if the layers of the tilemap were added, removed or resized, in which case every chunk was encoded
+     */
+    public boolean update(BaseTilemap tilemap, ChunkListener listener) {
+        int layerCount = tilemap.getLayers().size();
+        boolean unchanged = layers.size() == layerCount;
+        while (layers.size() > layerCount) {
+            layers.remove(layers.size() - 1);
+        }
+        
+        for (int i = 0; i < layerCount; i++) {
+            BaseLayer layer = tilemap.getLayers().get(i);
+            EncodedLayer encoded = i < layers.size() ? layers.get(i) : null;
+            if (encoded == null || !encoded.matches(layer)) {
+                unchanged = false;
+                encoded = new EncodedLayer(layer);
+                if (i < layers.size()) {
+                    layers.set(i, encoded);
+                } else {
+                    layers.add(encoded);
+                }
+            }
+            if (encoded.revision == layer.getRevision() && encoded.revision != -1) {
+                continue;
+            }
+            for (int chunk = 0; chunk < encoded.chunks.length; chunk++) {
+                int revision = layer.getChunkRevision(chunk);
+                if (encoded.chunks[chunk] == null || encoded.revisions[chunk] != revision) {
+                    encoded.chunks[chunk] = encodeChunk(layer, chunk % encoded.chunkColumns, chunk / encoded.chunkColumns);
+                    encoded.revisions[chunk] = revision;
+                    if (listener != null) {
+                        listener.onChunkEncoded(i, chunk, encoded.chunks[chunk]);
+                    }
+                }
+            }
+            encoded.revision = layer.getRevision();
+        }
+        return unchanged;
+    }
+    
+    /**
+     * @return a copy of the encoded layers that stays the same when this is updated again
+     */
+    public EncodedLayer[] snapshot() {
+        EncodedLayer[] snapshot = new EncodedLayer[layers.size()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = layers.get(i).copy();
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Writes a complete binary tilemap.
+     *
+     * @param header the tilemap header, with the header of every layer in the "layers" array
+     * @param layers a snapshot taken with {@link #snapshot()}
+     */
+    public static void write(DataOutputStream output, JSONObject header, EncodedLayer[] layers) throws IOException {
+        output.writeInt(BinaryTilemapFormat.MAGIC);
+        writeVarInt(output, BinaryTilemapFormat.VERSION);
+        writeJson(output, header);
+        
+        for (EncodedLayer layer : layers) {
+            writeVarInt(output, layer.columns);
+            writeVarInt(output, layer.rows);
+            writeVarInt(output, BaseLayer.SAVE_CHUNK_SHIFT);
+            for (byte[] chunk : layer.chunks) {
+                writeVarInt(output, chunk.length);
+                output.write(chunk);
+            }
+        }
+        output.flush();
+    }
+    
+    /**
+     * @return the amount of bytes taken up by the chunks of the given layers
+     */
+    public static long encodedSize(EncodedLayer[] layers) {
+        long size = 0;
+        for (EncodedLayer layer : layers) {
+            for (byte[] chunk : layer.chunks) {
+                size += chunk.length;
+            }
+        }
+        return size;
+    }
+    
+    private byte[] encodeChunk(BaseLayer layer, int chunkX, int chunkY) {
+        int size = 1 << BaseLayer.SAVE_CHUNK_SHIFT;
+        int startX = chunkX * size, startY = chunkY * size;
+        int endX = Math.min(startX + size, layer.getColumns()), endY = Math.min(startY + size, layer.getRows());
+        
+        try {
+            buffer.reset();
+            int length = 0, value = LayerStorage.EMPTY;
+            boolean empty = true;
+            for (int y = startY; y < endY; y++) {
+                for (int x = startX; x < endX; x++) {
+                    int cell = layer.getCell(x, y);
+                    if (length != 0 && cell != value) {
+                        writeVarInt(bufferOutput, length);
+                        writeVarInt(bufferOutput, value);
+                        length = 0;
+                    }
+                    empty &= cell == LayerStorage.EMPTY;
+                    value = cell;
+                    length++;
+                }
+            }
+            if (empty) {
+                return EMPTY_CHUNK;
+            }
+            writeVarInt(bufferOutput, length);
+            writeVarInt(bufferOutput, value);
+        } catch (IOException e) {
+            //Writing to a byte array never fails
+            throw new RuntimeException(e);
+        }
+        return buffer.toByteArray();
+    }
+    
+    @FunctionalInterface
+    interface ChunkListener {
+        void onChunkEncoded(int layer, int chunk, byte[] bytes);
+    }
+    
+    static class EncodedLayer {
+        private final BaseLayer layer;
+        private final int columns, rows, chunkColumns;
+        //Chunk arrays are never modified once encoded, so copies can share them
+        private final byte[][] chunks;
+        private final int[] revisions;
+        private int revision = -1;
+        
+        private EncodedLayer(BaseLayer layer) {
+            this(layer, layer.getColumns(), layer.getRows(), layer.getSaveChunkColumns(),
+                    new byte[layer.getSaveChunkColumns() * layer.getSaveChunkRows()][],
+                    new int[layer.getSaveChunkColumns() * layer.getSaveChunkRows()]);
+        }
+        
+        private EncodedLayer(BaseLayer layer, int columns, int rows, int chunkColumns, byte[][] chunks, int[] revisions) {
+            this.layer = layer;
+            this.columns = columns;
+            this.rows = rows;
+            this.chunkColumns = chunkColumns;
+            this.chunks = chunks;
+            this.revisions = revisions;
+        }
+        
+        /**
+         * @return true if the encoded chunks belong to the layer, and the layer hasn't been resized
+         */
+        private boolean matches(BaseLayer layer) {
+            return this.layer == layer && columns == layer.getColumns() && rows == layer.getRows();
+        }
+        
+        private EncodedLayer copy() {
+            return new EncodedLayer(layer, columns, rows, chunkColumns, chunks.clone(), revisions);
+        }
+    }
+    
+}
@@ -0,0 +1,124 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.util.JsonStreamReader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads json tilemaps without ever holding the whole file, or a string per cell, in memory.
+ * <p>
+ * Loading happens in two streaming passes over the file. The first pass ({@link #readHeader()})
+ * builds a {@link JSONObject} of everything except the "tilemap" rows of each layer, which is
+ * small and is what the tilemap constructors expect. The second pass ({@link #readLayers(BaseTilemap)})
+ * decodes the rows straight into the storage of the layers that the constructor created.
+ * Two passes are needed because json objects are unordered, so a layer's rows may appear
+ * before the dimensions that are needed to create its storage.
+ */
+public class JsonTilemapReader implements TilemapReader {
+    private final File file;
+    
+    public JsonTilemapReader(File file) {
+        this.file = file;
+    }
+    
+    @Override
+    public JSONObject readHeader() throws IOException {
+        JSONObject json = new JSONObject();
+        try (JsonStreamReader reader = open()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("layers")) {
+                    json.put(name, readLayerHeaders(reader));
+                } else {
+                    json.put(name, reader.nextValue());
+                }
+            }
+            reader.endObject();
+        }
+        return json;
+    }
+    
+    private JSONArray readLayerHeaders(JsonStreamReader reader) throws IOException {
+        JSONArray layers = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JSONObject layer = new JSONObject();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("tilemap")) {
+                    reader.skipValue();
+                } else {
+                    layer.put(name, reader.nextValue());
+                }
+            }
+            reader.endObject();
+            layers.put(layer);
+        }
+        reader.endArray();
+        return layers;
+    }
+    
+    @Override
+    public void readLayers(BaseTilemap tilemap) throws IOException {
+        try (JsonStreamReader reader = open()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("layers")) {
+                    readLayerRows(reader, tilemap);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+    
+    private void readLayerRows(JsonStreamReader reader, BaseTilemap tilemap) throws IOException {
+        //Reused for every row so that reading a row doesn't allocate
+        StringBuilder row = new StringBuilder();
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            if (i >= tilemap.getLayers().size()) {
+                //The tilemap didn't create a layer for this entry, so there is nowhere to put its rows
+                reader.skipValue();
+                continue;
+            }
+            BaseLayer layer = tilemap.getLayers().get(i);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("tilemap")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                for (int y = 0; reader.hasNext(); y++) {
+                    reader.nextString(row);
+                    layer.deserializeRow(y, row);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+    
+    private JsonStreamReader open() throws IOException {
+        return new JsonStreamReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+    
+    @Override
+    public void close() {
+        //Every pass opens and closes its own stream
+    }
+    
+}
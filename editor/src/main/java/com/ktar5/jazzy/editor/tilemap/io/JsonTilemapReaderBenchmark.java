@@ -0,0 +1,122 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.gui.centerview.tabs.TilemapTab;
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.whole.WholeTile;
+import com.ktar5.jazzy.editor.tilemap.whole.WholeTileLayer;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import com.ktar5.jazzy.editor.util.StringUtil;
+import javafx.scene.layout.Pane;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares loading a json tilemap through {@link JsonTilemapReader} with the way maps used to be loaded,
+ * which read the file into a string, parsed it into a {@link JSONObject} and split every row into strings.
+ * <p>
+ * Run it with the amount of cells per side as the only argument, 2048 by default. It writes a map of random
+ * tiles to a temporary file, loads it a few times both ways, and prints the average time and heap used.
+ * The old path only parses the blocks into ints, it doesn't create a tile per cell like it used to,
+ * so the real difference is larger than the one printed.
+ */
+public class JsonTilemapReaderBenchmark {
+    private static final int TILE_SIZE = 16, WARMUP = 2, RUNS = 5;
+    
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        File file = File.createTempFile("jazzy-benchmark", ".json");
+        file.deleteOnExit();
+        
+        BenchmarkTilemap source = new BenchmarkTilemap(file, size * TILE_SIZE, size * TILE_SIZE);
+        WholeTileLayer layer = new WholeTileLayer(source, "layer", true, TILE_SIZE, TILE_SIZE, 0, 0, 0, 0);
+        source.getLayers().add(layer);
+        Random random = new Random(0);
+        for (int y = 0; y < layer.getRows(); y++) {
+            for (int x = 0; x < layer.getColumns(); x++) {
+                layer.deserializeCell(x, y, WholeTile.pack(random.nextInt(256), random.nextInt(4)));
+            }
+        }
+        AtomicFileWriter.write(file, new JsonTilemapWriter(false).prepare(source));
+        System.out.println("Map of " + layer.getColumns() + "x" + layer.getRows() + " cells, "
+                + (file.length() >> 20) + "MB of json");
+        
+        measure("Streamed", () -> {
+            try (TilemapReader reader = new JsonTilemapReader(file)) {
+                BaseTilemap tilemap = new BenchmarkTilemap(file, reader.readHeader());
+                reader.readLayers(tilemap);
+            }
+        });
+        measure("Parsed into a tree", () -> {
+            JSONObject json = new JSONObject(StringUtil.readFileAsString(file));
+            JSONArray layers = json.getJSONArray("layers");
+            for (int i = 0; i < layers.length(); i++) {
+                JSONArray grid = layers.getJSONObject(i).getJSONArray("tilemap");
+                int[] cells = new int[grid.length() * size];
+                for (int y = 0; y < grid.length(); y++) {
+                    String[] blocks = grid.getString(y).split(",");
+                    for (int x = 0; x < blocks.length; x++) {
+                        String[] split = blocks[x].split("_");
+                        cells[(y * size) + x] = WholeTile.pack(Integer.valueOf(split[0]),
+                                split.length > 1 ? Integer.valueOf(split[1]) : 0);
+                    }
+                }
+            }
+        });
+    }
+    
+    private static void measure(String name, Load load) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            load.run();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long time = 0, memory = 0;
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.nanoTime();
+            load.run();
+            time += System.nanoTime() - start;
+            memory += Math.max(0, runtime.totalMemory() - runtime.freeMemory() - usedBefore);
+        }
+        System.out.println(name + ": " + (time / RUNS / 1_000_000) + "ms, " + (memory / RUNS >> 20) + "MB more heap in use");
+    }
+    
+    private interface Load {
+        void run() throws IOException;
+    }
+    
+    /**
+     * The smallest tilemap that can be loaded, with whole tile layers and no tab.
+     */
+    private static class BenchmarkTilemap extends BaseTilemap {
+        
+        public BenchmarkTilemap(File saveFile, JSONObject json) {
+            super(saveFile, json);
+        }
+        
+        public BenchmarkTilemap(File saveFile, int width, int height) {
+            super(saveFile, width, height);
+        }
+        
+        @Override
+        public TilemapTab getNewTilemapTab() {
+            return null;
+        }
+        
+        @Override
+        protected BaseLayer deserializeLayer(JSONObject json) {
+            return new WholeTileLayer(this, json);
+        }
+        
+        @Override
+        public void draw(Pane pane) {
+        }
+        
+    }
+    
+}
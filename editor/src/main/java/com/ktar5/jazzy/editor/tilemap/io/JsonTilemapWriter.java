@@ -0,0 +1,52 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the pretty-printed json serialization of a tilemap.
+ * This is the interchange format, see {@link BinaryTilemapWriter} for the compact one.
+ */
+public class JsonTilemapWriter implements TilemapWriter {
+    private final boolean runLength;
+    
+    /**
+     * @param runLength true to run-length encode the rows of every layer, see {@link BaseLayer#serializeRows(boolean)}.
+     *                  Tools other than Jazzy may not understand run-length encoded rows.
+     */
+    public JsonTilemapWriter(boolean runLength) {
+        this.runLength = runLength;
+    }
+    
+    @Override
+    public AtomicFileWriter.Output prepare(BaseTilemap tilemap) {
+        TilemapSnapshot snapshot = new TilemapSnapshot(tilemap);
+        return output -> write(snapshot, output);
+    }
+    
+    /**
+     * Writes the snapshot to the stream, without closing it.
+     */
+    public void write(TilemapSnapshot snapshot, OutputStream output) throws IOException {
+        JSONObject json = snapshot.getHeader();
+        JSONArray layers = json.getJSONArray("layers");
+        for (int i = 0; i < snapshot.getLayerCount(); i++) {
+            BaseLayer layer = snapshot.getLayers()[i];
+            layers.getJSONObject(i).put("tilemap", layer.serializeRows(snapshot.getCells()[i], runLength));
+        }
+        
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        json.write(writer, 4, 0);
+        writer.flush();
+    }
+    
+}
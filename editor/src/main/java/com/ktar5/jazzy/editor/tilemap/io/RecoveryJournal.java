@@ -0,0 +1,288 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import com.ktar5.jazzy.editor.util.BackgroundSaver;
+import javafx.application.Platform;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat.readVarInt;
+import static com.ktar5.jazzy.editor.tilemap.io.BinaryTilemapFormat.writeVarInt;
+
+/**
+ * Keeps a copy of the unsaved state of an open tilemap on disk, so that edits survive a crash.
+ * <p>
+ * Every map has three files in the {@link #DIRECTORY recovery directory}, named after its id:
+ * <ul>
+ * <li>an info file with the save file and type of the map,</li>
+ * <li>a base file with a full copy of the map in the binary format,</li>
+ * <li>a journal with the chunks that were edited since the base was written.</li>
+ * </ul>
+ * A checkpoint only appends the chunks that changed since the previous one, so it is cheap enough
+ * to run every few seconds. The journal is compacted into a new base when it grows larger than the base,
+ * or when anything other than cells changed (layers, properties, dimensions).
+ * <p>
+ * The journal is a sequence of batches, one per checkpoint. Every batch is its byte length, its records,
+ * and a CRC32 of the records, so a batch that was cut off by a crash is recognized and ignored.
+ * A record is a layer index, a chunk index and a chunk encoded like in the base file.
+ */
+public class RecoveryJournal {
+    public static final File DIRECTORY = new File(System.getProperty("user.home"), ".jazzy" + File.separator + "recovery");
+    private static final String INFO_EXTENSION = ".json", JOURNAL_EXTENSION = ".journal";
+    
+    private final UUID id;
+    private final EncodedTilemap encoded = new EncodedTilemap();
+    //Everything below reflects what has been submitted to the background saver, not what is on disk yet
+    private boolean hasBase;
+    private String baseHeader;
+    private long baseSize, journalSize;
+    
+    public RecoveryJournal(UUID id) {
+        this.id = id;
+    }
+    
+    /**
+     * Captures every edit made since the last checkpoint. Must be called on the JavaFX application thread.
+     *
+     * @return the write to run on the background thread, or null if nothing changed
+     */
+    public BackgroundSaver.Save checkpoint(BaseTilemap tilemap) {
+        JSONObject header = tilemap.serializeHeader();
+        header.put("layers", tilemap.getLayers().serializeHeaders());
+        String headerText = header.toString();
+        
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordOutput = new DataOutputStream(records);
+        boolean sameLayers = encoded.update(tilemap, (layer, chunk, bytes) -> {
+            try {
+                writeVarInt(recordOutput, layer);
+                writeVarInt(recordOutput, chunk);
+                writeVarInt(recordOutput, bytes.length);
+                recordOutput.write(bytes);
+            } catch (IOException e) {
+                //Writing to a byte array never fails
+                throw new RuntimeException(e);
+            }
+        });
+        
+        if (hasBase && sameLayers && headerText.equals(baseHeader) && journalSize + records.size() <= baseSize) {
+            if (records.size() == 0) {
+                return null;
+            }
+            byte[] batch = records.toByteArray();
+            journalSize += batch.length + 8;
+            File journal = getJournalFile(id);
+            return () -> append(journal, batch);
+        }
+        
+        EncodedTilemap.EncodedLayer[] layers = encoded.snapshot();
+        JSONObject info = new JSONObject();
+        info.put("saveFile", tilemap.getSaveFile().getAbsolutePath());
+        info.put("type", tilemap.getClass().getName());
+        hasBase = true;
+        baseHeader = headerText;
+        baseSize = headerText.length() + EncodedTilemap.encodedSize(layers);
+        journalSize = 0;
+        
+        UUID id = this.id;
+        return () -> {
+            try {
+                //The old journal has to go first, it must never be applied to a newer base
+                Files.deleteIfExists(getJournalFile(id).toPath());
+                AtomicFileWriter.write(getBaseFile(id), output -> EncodedTilemap.write(new DataOutputStream(output), header, layers));
+                AtomicFileWriter.write(getInfoFile(id), output -> output.write(info.toString().getBytes(StandardCharsets.UTF_8)));
+            } catch (Throwable e) {
+                //The old base may still be on disk, and the batches meant for the new one must never be applied to it.
+                //Without an info file nothing is recovered, until the next checkpoint writes a whole base again.
+                Platform.runLater(() -> hasBase = false);
+                try {
+                    Files.deleteIfExists(getInfoFile(id).toPath());
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        };
+    }
+    
+    /**
+     * Forgets everything on disk, used once the map has been saved or closed.
+     * The next checkpoint writes a new base. Must be called on the JavaFX application thread.
+     *
+     * @return the deletion to run on the background thread
+     */
+    public BackgroundSaver.Save discard() {
+        hasBase = false;
+        return discard(id);
+    }
+    
+    /**
+     * @return the deletion of every recovery file of the map with the given id
+     */
+    public static BackgroundSaver.Save discard(UUID id) {
+        return () -> {
+            //The info file goes first, without it the others are never looked at
+            Files.deleteIfExists(getInfoFile(id).toPath());
+            Files.deleteIfExists(getJournalFile(id).toPath());
+            Files.deleteIfExists(getBaseFile(id).toPath());
+        };
+    }
+    
+    private static void append(File journal, byte[] batch) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(batch);
+        ByteBuffer buffer = ByteBuffer.allocate(batch.length + 8);
+        buffer.putInt(batch.length).put(batch).putInt((int) crc.getValue());
+        buffer.flip();
+        
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+    
+    /**
+     * @return the ids of every map that has recovery files with a complete base
+     */
+    public static List<UUID> findRecoverable() {
+        List<UUID> ids = new ArrayList<>();
+        File[] files = DIRECTORY.listFiles((dir, name) -> name.endsWith(INFO_EXTENSION));
+        if (files == null) {
+            return ids;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                UUID id = UUID.fromString(name.substring(0, name.length() - INFO_EXTENSION.length()));
+                if (getBaseFile(id).exists()) {
+                    ids.add(id);
+                }
+            } catch (IllegalArgumentException e) {
+                Logger.warn("Ignoring unknown file in recovery directory: " + file.getPath());
+            }
+        }
+        return ids;
+    }
+    
+    /**
+     * @return the info of a recoverable map, with the absolute path of its "saveFile" and its "type"
+     */
+    public static JSONObject readInfo(UUID id) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(getInfoFile(id)), StandardCharsets.UTF_8)) {
+            return new JSONObject(new JSONTokener(reader));
+        }
+    }
+    
+    /**
+     * @return a reader for the base of a recoverable map
+     */
+    public static TilemapReader openBase(UUID id) throws IOException {
+        return new BinaryTilemapReader(getBaseFile(id));
+    }
+    
+    /**
+     * Applies the journal of a recoverable map to a tilemap that was read from its base.
+     *
+     * @return the amount of checkpoints that were applied
+     */
+    public static int applyJournal(UUID id, BaseTilemap tilemap) throws IOException {
+        File journal = getJournalFile(id);
+        if (!journal.exists()) {
+            return 0;
+        }
+        
+        int batches = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            while (true) {
+                byte[] batch;
+                int crc;
+                try {
+                    int length = input.readInt();
+                    if (length < 0 || length > journal.length()) {
+                        break;
+                    }
+                    batch = new byte[length];
+                    input.readFully(batch);
+                    crc = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 expected = new CRC32();
+                expected.update(batch);
+                if ((int) expected.getValue() != crc) {
+                    break;
+                }
+                applyBatch(new DataInputStream(new ByteArrayInputStream(batch)), tilemap);
+                batches++;
+            }
+        }
+        return batches;
+    }
+    
+    private static void applyBatch(DataInputStream input, BaseTilemap tilemap) throws IOException {
+        while (input.available() > 0) {
+            int layerIndex = readVarInt(input), chunk = readVarInt(input), length = readVarInt(input);
+            if (layerIndex >= tilemap.getLayers().size()) {
+                throw new IOException("Journal refers to layer " + layerIndex + " which doesn't exist");
+            }
+            BaseLayer layer = tilemap.getLayers().get(layerIndex);
+            int chunkColumns = layer.getSaveChunkColumns();
+            if (chunk >= chunkColumns * layer.getSaveChunkRows()) {
+                throw new IOException("Journal refers to chunk " + chunk + " which doesn't exist in layer " + layer.getName());
+            }
+            
+            int size = 1 << BaseLayer.SAVE_CHUNK_SHIFT;
+            int startX = (chunk % chunkColumns) * size, startY = (chunk / chunkColumns) * size;
+            int width = Math.min(size, layer.getColumns() - startX), height = Math.min(size, layer.getRows() - startY);
+            for (int y = startY; y < startY + height; y++) {
+                for (int x = startX; x < startX + width; x++) {
+                    layer.deserializeCell(x, y, LayerStorage.EMPTY);
+                }
+            }
+            if (length != 0) {
+                BinaryTilemapReader.readChunk(input, layer, startX, startY, width, height);
+            }
+        }
+    }
+    
+    private static File getInfoFile(UUID id) {
+        return new File(DIRECTORY, id + INFO_EXTENSION);
+    }
+    
+    private static File getBaseFile(UUID id) {
+        return new File(DIRECTORY, id + "." + BinaryTilemapFormat.EXTENSION);
+    }
+    
+    private static File getJournalFile(UUID id) {
+        return new File(DIRECTORY, id + JOURNAL_EXTENSION);
+    }
+    
+}
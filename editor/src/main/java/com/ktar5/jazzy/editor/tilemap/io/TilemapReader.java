@@ -0,0 +1,38 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads a serialized tilemap in two steps. The header is small and is passed to the
+ * serialization constructor of the tilemap, after which the cells of every layer are
+ * decoded straight into the layers that the constructor created.
+ */
+public interface TilemapReader extends Closeable {
+    
+    /**
+     * Opens a reader for the given file, picking the format from the contents of the file.
+     */
+    public static TilemapReader open(File file) throws IOException {
+        if (BinaryTilemapFormat.isBinary(file)) {
+            return new BinaryTilemapReader(file);
+        }
+        return new JsonTilemapReader(file);
+    }
+    
+    /**
+     * @return the json serialization of the tilemap, with the "tilemap" section of every layer left out
+     */
+    public JSONObject readHeader() throws IOException;
+    
+    /**
+     * Decodes the cells of every layer into the layers of the given tilemap,
+     * which must have been created from the json returned by {@link #readHeader()}.
+     */
+    public void readLayers(BaseTilemap tilemap) throws IOException;
+    
+}
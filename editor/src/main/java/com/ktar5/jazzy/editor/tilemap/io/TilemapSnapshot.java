@@ -0,0 +1,40 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import lombok.Getter;
+import org.json.JSONObject;
+
+/**
+ * The state of a tilemap at one point in time, which writers can read on a background thread
+ * while the tilemap keeps being edited on the JavaFX application thread.
+ * <p>
+ * Taking a snapshot is cheap: the header is small, and the cells are copied as flat int arrays.
+ */
+@Getter
+public class TilemapSnapshot {
+    //The tilemap header, with the header of every layer in the "layers" array
+    private final JSONObject header;
+    private final BaseLayer[] layers;
+    private final LayerStorage[] cells;
+    
+    /**
+     * Must be called from the thread that edits the tilemap.
+     */
+    public TilemapSnapshot(BaseTilemap tilemap) {
+        this.header = tilemap.serializeHeader();
+        this.header.put("layers", tilemap.getLayers().serializeHeaders());
+        this.layers = new BaseLayer[tilemap.getLayers().size()];
+        this.cells = new LayerStorage[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = tilemap.getLayers().get(i);
+            cells[i] = layers[i].snapshotStorage();
+        }
+    }
+    
+    public int getLayerCount() {
+        return layers.length;
+    }
+    
+}
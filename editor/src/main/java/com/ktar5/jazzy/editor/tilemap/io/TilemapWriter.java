@@ -0,0 +1,36 @@
+package com.ktar5.jazzy.editor.tilemap.io;
+
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+
+import java.io.File;
+
+/**
+ * Writes a tilemap to a file in one of the supported formats.
+ */
+public interface TilemapWriter {
+    
+    /**
+     * Picks the format from the extension of the given file. Files ending in ".json" are written as
+     * json with plain rows, which every reader of the json format understands, everything else is written
+     * in the binary format. Run-length encoded rows are only written when asked for, see {@link JsonTilemapWriter}.
+     */
+    public static TilemapWriter forFile(File file) {
+        if (file.getName().toLowerCase().endsWith(".json")) {
+            return new JsonTilemapWriter(false);
+        }
+        return new BinaryTilemapWriter();
+    }
+    
+    /**
+     * Captures everything that has to be written, so that the tilemap can keep being edited
+     * while the file is written. Must be called from the JavaFX application thread.
+     * <p>
+     * Writers may keep state between calls for the same tilemap to avoid redoing work for
+     * parts of the tilemap that haven't changed.
+     *
+     * @return the output that writes the captured state, which is run on a background thread
+     */
+    public AtomicFileWriter.Output prepare(BaseTilemap tilemap);
+    
+}
@@ -0,0 +1,166 @@
+package com.ktar5.jazzy.editor.tilemap.storage;
+
+/**
+ * Splits a layer into square chunks of {@link #CHUNK_SIZE} by {@link #CHUNK_SIZE} cells.
+ * A chunk is only allocated once a tile is written into it and is freed again as soon as
+ * its last tile is removed, so memory scales with the painted area instead of the map bounds.
+ */
+public class ChunkedLayerStorage implements LayerStorage {
+    public static final int CHUNK_SHIFT = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    private final int columns, rows;
+    private final int chunkColumns, chunkRows;
+    //A null chunk has no tiles in it
+    private final int[][] chunks;
+    //Amount of non-empty cells in each chunk
+    private final int[] tileCounts;
+    private int allocatedChunks;
+    
+    public ChunkedLayerStorage(int columns, int rows) {
+        if (columns < 0 || rows < 0) {
+            throw new IllegalArgumentException("Storage dimensions must not be negative: " + columns + "x" + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.chunkColumns = (columns + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunkRows = (rows + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunks = new int[chunkColumns * chunkRows][];
+        this.tileCounts = new int[chunks.length];
+    }
+    
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+    
+    @Override
+    public int getRows() {
+        return rows;
+    }
+    
+    @Override
+    public int get(int x, int y) {
+        checkRange(x, y);
+        int[] chunk = chunks[chunkIndex(x, y)];
+        if (chunk == null) {
+            return EMPTY;
+        }
+        return chunk[cellIndex(x, y)];
+    }
+    
+    @Override
+    public int set(int x, int y, int value) {
+        checkRange(x, y);
+        int chunkIndex = chunkIndex(x, y);
+        int[] chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            if (value == EMPTY) {
+                return EMPTY;
+            }
+            chunk = chunks[chunkIndex] = new int[CHUNK_SIZE * CHUNK_SIZE];
+            allocatedChunks++;
+        }
+        
+        int cellIndex = cellIndex(x, y);
+        int previous = chunk[cellIndex];
+        chunk[cellIndex] = value;
+        
+        if (previous == EMPTY && value != EMPTY) {
+            tileCounts[chunkIndex]++;
+        } else if (previous != EMPTY && value == EMPTY && --tileCounts[chunkIndex] == 0) {
+            chunks[chunkIndex] = null;
+            allocatedChunks--;
+        }
+        return previous;
+    }
+    
+    /**
+     * Copies only the allocated chunks, so this is as cheap as the painted area is small.
+     */
+    @Override
+    public ChunkedLayerStorage copy() {
+        ChunkedLayerStorage copy = new ChunkedLayerStorage(columns, rows);
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                copy.chunks[i] = chunks[i].clone();
+            }
+        }
+        System.arraycopy(tileCounts, 0, copy.tileCounts, 0, tileCounts.length);
+        copy.allocatedChunks = allocatedChunks;
+        return copy;
+    }
+    
+    @Override
+    public void forEachTile(CellConsumer consumer) {
+        for (int chunkY = 0; chunkY < chunkRows; chunkY++) {
+            for (int chunkX = 0; chunkX < chunkColumns; chunkX++) {
+                forEachTileInChunk(chunkX, chunkY, consumer);
+            }
+        }
+    }
+    
+    /**
+     * Calls the consumer for every non-empty cell of a single chunk.
+     */
+    public void forEachTileInChunk(int chunkX, int chunkY, CellConsumer consumer) {
+        int[] chunk = chunks[(chunkY * chunkColumns) + chunkX];
+        if (chunk == null) {
+            return;
+        }
+        int startX = chunkX << CHUNK_SHIFT, startY = chunkY << CHUNK_SHIFT;
+        int endX = Math.min(startX + CHUNK_SIZE, columns), endY = Math.min(startY + CHUNK_SIZE, rows);
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                int value = chunk[cellIndex(x, y)];
+                if (value != EMPTY) {
+                    consumer.accept(x, y, value);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return true if the chunk has at least one tile in it
+     */
+    public boolean isChunkAllocated(int chunkX, int chunkY) {
+        return chunks[(chunkY * chunkColumns) + chunkX] != null;
+    }
+    
+    /**
+     * @return the amount of chunks along the x axis
+     */
+    public int getChunkColumns() {
+        return chunkColumns;
+    }
+    
+    /**
+     * @return the amount of chunks along the y axis
+     */
+    public int getChunkRows() {
+        return chunkRows;
+    }
+    
+    /**
+     * @return the amount of chunks that currently hold tiles
+     */
+    public int getAllocatedChunks() {
+        return allocatedChunks;
+    }
+    
+    private void checkRange(int x, int y) {
+        if (!isInRange(x, y)) {
+            throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") is not in a " + columns + "x" + rows + " layer");
+        }
+    }
+    
+    private int chunkIndex(int x, int y) {
+        return ((y >> CHUNK_SHIFT) * chunkColumns) + (x >> CHUNK_SHIFT);
+    }
+    
+    private static int cellIndex(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_SHIFT) + (x & CHUNK_MASK);
+    }
+    
+}
@@ -0,0 +1,77 @@
+package com.ktar5.jazzy.editor.tilemap.storage;
+
+/**
+ * Backing store for the cells of a {@link com.ktar5.jazzy.editor.tilemap.BaseLayer}.
+ * <p>
+ * Every cell is a single packed int whose meaning is defined by the layer that owns the
+ * storage (see {@link com.ktar5.jazzy.editor.tilemap.BaseLayer#createTile(int)}).
+ * A value of {@link #EMPTY} always means that there is no tile in the cell.
+ */
+public interface LayerStorage {
+    int EMPTY = 0;
+    
+    /**
+     * @return the amount of columns (tiles along the x axis) in this storage
+     */
+    int getColumns();
+    
+    /**
+     * @return the amount of rows (tiles along the y axis) in this storage
+     */
+    int getRows();
+    
+    /**
+     * @return the packed value at the given cell, or {@link #EMPTY} if there is no tile
+     */
+    int get(int x, int y);
+    
+    /**
+     * Sets the packed value of the given cell.
+     *
+     * @return the packed value that was previously in the cell
+     */
+    int set(int x, int y, int value);
+    
+    /**
+     * Creates an independent copy of this storage, used to take a snapshot of a layer
+     * that can be read on another thread while the original keeps being edited.
+     */
+    LayerStorage copy();
+    
+    /**
+     * Empties the given cell.
+     *
+     * @return the packed value that was previously in the cell
+     */
+    default int clear(int x, int y) {
+        return set(x, y, EMPTY);
+    }
+    
+    /**
+     * @return true if the x and y are within the bounds of the storage
+     */
+    default boolean isInRange(int x, int y) {
+        return x >= 0 && x < getColumns() && y >= 0 && y < getRows();
+    }
+    
+    /**
+     * Calls the consumer for every cell that is not {@link #EMPTY}.
+     * Implementations are free to skip over regions they know to be empty.
+     */
+    default void forEachTile(CellConsumer consumer) {
+        for (int y = 0; y < getRows(); y++) {
+            for (int x = 0; x < getColumns(); x++) {
+                int value = get(x, y);
+                if (value != EMPTY) {
+                    consumer.accept(x, y, value);
+                }
+            }
+        }
+    }
+    
+    @FunctionalInterface
+    interface CellConsumer {
+        void accept(int x, int y, int value);
+    }
+    
+}
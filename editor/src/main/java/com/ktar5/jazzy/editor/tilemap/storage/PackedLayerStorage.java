@@ -0,0 +1,57 @@
+package com.ktar5.jazzy.editor.tilemap.storage;
+
+/**
+ * Stores every cell of a layer in a single flat int array, indexed row by row.
+ * This costs 4 bytes per cell regardless of how many cells are painted.
+ */
+public class PackedLayerStorage implements LayerStorage {
+    private final int columns, rows;
+    private final int[] cells;
+    
+    public PackedLayerStorage(int columns, int rows) {
+        if (columns < 0 || rows < 0) {
+            throw new IllegalArgumentException("Storage dimensions must not be negative: " + columns + "x" + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.cells = new int[columns * rows];
+    }
+    
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+    
+    @Override
+    public int getRows() {
+        return rows;
+    }
+    
+    @Override
+    public int get(int x, int y) {
+        return cells[index(x, y)];
+    }
+    
+    @Override
+    public int set(int x, int y, int value) {
+        int index = index(x, y);
+        int previous = cells[index];
+        cells[index] = value;
+        return previous;
+    }
+    
+    @Override
+    public PackedLayerStorage copy() {
+        PackedLayerStorage copy = new PackedLayerStorage(columns, rows);
+        System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+        return copy;
+    }
+    
+    private int index(int x, int y) {
+        if (!isInRange(x, y)) {
+            throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") is not in a " + columns + "x" + rows + " layer");
+        }
+        return (y * columns) + x;
+    }
+    
+}
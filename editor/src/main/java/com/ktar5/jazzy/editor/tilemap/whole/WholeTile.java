@@ -22,6 +22,33 @@ public class WholeTile extends Tile<WholeTileset> {
         this.direction = direction;
     }
     
+    /**
+     * Creates a tile from a value produced by {@link #pack(int, int)}.
+     */
+    public static WholeTile unpack(int value, WholeTileset tileset) {
+        return new WholeTile(blockIdOf(value), directionOf(value), tileset);
+    }
+    
+    /**
+     * Packs a block id and a direction into a single int so that it can be kept in a layer's storage.
+     * The two lowest bits hold the direction (0-3), the rest hold the block id.
+     */
+    public static int pack(int blockId, int direction) {
+        return (blockId << 2) | (direction & 3);
+    }
+    
+    public static int blockIdOf(int value) {
+        return value >>> 2;
+    }
+    
+    public static int directionOf(int value) {
+        return value & 3;
+    }
+    
+    public int pack() {
+        return pack(blockId, direction);
+    }
+    
     @Override
     public String serialize() {
         return toString();
@@ -48,10 +75,11 @@ public class WholeTile extends Tile<WholeTileset> {
     @Override
     public void updateAllImageViews() {
         if (this.imageView == null) {
-            this.imageView = new PixelatedImageView(getTileset().getTileImages().get(blockId));
+            this.imageView = new PixelatedImageView(getTileset().getAtlas());
         } else {
-            this.imageView.setImage(getTileset().getTileImages().get(blockId));
+            this.imageView.setImage(getTileset().getAtlas());
         }
+        this.imageView.setViewport(getTileset().getTileViewport(blockId));
         this.imageView.setRotate(90 * direction);
     }
     
@@ -3,9 +3,11 @@ package com.ktar5.jazzy.editor.tilemap.whole;
 import com.ktar5.jazzy.editor.coordination.EditorCoordinator;
 import com.ktar5.jazzy.editor.tilemap.BaseLayer;
 import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import com.ktar5.jazzy.editor.util.StringUtil;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import lombok.Getter;
@@ -31,20 +33,28 @@ public class WholeTileLayer extends BaseLayer {
     }
     
     @Override
-    public void deserializeBlock(String block, int x, int y) {
-        if (block.equals("0")) {
-            return;
-        } else if (block.contains("_")) {
-            String[] split = block.split("_");
-            this.grid[x][y] = new WholeTile(Integer.valueOf(split[0]), Integer.valueOf(split[1]), getTileset());
+    public int deserializeBlock(CharSequence row, int start, int end) {
+        int split = StringUtil.indexOf(row, '_', start, end);
+        if (split == -1) {
+            //A block id of 0 packs to LayerStorage.EMPTY
+            return WholeTile.pack(StringUtil.parseInt(row, start, end), 0);
         } else {
-            this.grid[x][y] = new WholeTile(Integer.valueOf(block), 0, getTileset());
+            return WholeTile.pack(StringUtil.parseInt(row, start, split), StringUtil.parseInt(row, split + 1, end));
+        }
+    }
+    
+    @Override
+    protected void serializeBlock(int value, StringBuilder builder) {
+        //Same format as WholeTile#serialize
+        builder.append(WholeTile.blockIdOf(value));
+        if (WholeTile.directionOf(value) != 0) {
+            builder.append('_').append(WholeTile.directionOf(value));
         }
     }
     
     @Override
-    public JSONObject serialize() {
-        return null;
+    protected WholeTile createTile(int value) {
+        return WholeTile.unpack(value, getTileset());
     }
     
     @Override
@@ -52,10 +62,19 @@ public class WholeTileLayer extends BaseLayer {
         int x = (int) (event.getX() / this.getTileWidth());
         int y = (int) (event.getY() / this.getTileHeight());
         
+        //Shift makes a click fill the whole area under it, like a bucket
         if (event.getButton().equals(MouseButton.PRIMARY)) {
-            setCurrent(x, y);
+            if (event.isShiftDown()) {
+                fillCurrent(x, y);
+            } else {
+                setCurrent(x, y);
+            }
         } else if (event.getButton().equals(MouseButton.SECONDARY)) {
-            remove(x, y);
+            if (event.isShiftDown()) {
+                floodFill(x, y, LayerStorage.EMPTY);
+            } else {
+                remove(x, y);
+            }
         }
     }
     
@@ -109,57 +128,56 @@ public class WholeTileLayer extends BaseLayer {
     }
     
     @Override
-    public void draw(Pane pane) {
-        for (int y = getHeight() - 1; y >= 0; y--) {
-            for (int x = 0; x <= getWidth() - 1; x++) {
-                if (grid[x][y] == null) {
-                    continue;
-                }
-                int blockId = ((WholeTile) grid[x][y]).getBlockId();
-                if (blockId == 0) {
-                    continue;
-                }
-                grid[x][y].draw(pane, x * getTileWidth(), y * getTileHeight());
-            }
+    protected void paintCell(GraphicsContext graphics, int value, double x, double y) {
+        //Block 0 is no tile, even with a direction, and nothing can be drawn until a tileset is attached
+        int blockId = WholeTile.blockIdOf(value);
+        if (blockId == 0 || getTileset() == null) {
+            return;
+        }
+        int direction = WholeTile.directionOf(value);
+        if (direction == 0) {
+            getTileset().drawTile(graphics, blockId, x, y, getTileWidth(), getTileHeight());
+            return;
         }
+        //Rotate around the center of the cell, like the rotation of an ImageView
+        double halfWidth = getTileWidth() / 2d, halfHeight = getTileHeight() / 2d;
+        graphics.save();
+        graphics.translate(x + halfWidth, y + halfHeight);
+        graphics.rotate(90 * direction);
+        getTileset().drawTile(graphics, blockId, -halfWidth, -halfHeight, getTileWidth(), getTileHeight());
+        graphics.restore();
     }
     
     public void set(int x, int y, WholeTile tile) {
         if (tile == null || getTileset() == null) {
             return;
         }
-        remove(x, y);
-        this.grid[x][y] = tile;
-        this.grid[x][y].updateAllImageViews();
-        Pane pane = EditorCoordinator.get().getEditor().getTabDrawingPane(getId());
-        this.grid[x][y].draw(pane, x * getTileWidth(), y * getTileHeight());
+        setCell(x, y, tile.pack());
         setChanged(true);
     }
     
     public void setCurrent(int x, int y) {
         if (getTileset() == null) return;
         
-        if (grid[x][y] != null && grid[x][y] instanceof WholeTile) {
-            WholeTile wholeTile = (WholeTile) this.grid[x][y];
-            wholeTile.setBlockId(currentId);
-            wholeTile.setDirection(currentData);
-            wholeTile.updateAllImageViews();
-        } else {
-            remove(x, y);
-            this.grid[x][y] = new WholeTile(currentId, currentData, getTileset());
-            this.grid[x][y].updateAllImageViews();
-            Pane pane = EditorCoordinator.get().getEditor().getTabDrawingPane(getId());
-            this.grid[x][y].draw(pane, x * getTileWidth(), y * getTileWidth());
-        }
+        setCell(x, y, WholeTile.pack(currentId, currentData));
         setChanged(true);
     }
     
+    /**
+     * Replaces the tile at the given position, and every tile connected to it that is the same,
+     * with the current tile, see {@link #floodFill(int, int, int)}.
+     */
+    public void fillCurrent(int x, int y) {
+        if (getTileset() == null) return;
+        
+        floodFill(x, y, WholeTile.pack(currentId, currentData));
+    }
+    
     public void remove(int x, int y) {
-        if (grid[x][y] == null) {
+        if (getCell(x, y) == LayerStorage.EMPTY) {
             return;
         }
-        this.grid[x][y].remove(EditorCoordinator.get().getEditor().getTabDrawingPane(getId()));
-        this.grid[x][y] = null;
+        setCell(x, y, LayerStorage.EMPTY);
         setChanged(true);
     }
     
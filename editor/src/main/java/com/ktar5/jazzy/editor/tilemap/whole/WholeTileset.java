@@ -2,13 +2,10 @@ package com.ktar5.jazzy.editor.tilemap.whole;
 
 import com.ktar5.jazzy.editor.gui.utils.TilesetImageView;
 import com.ktar5.jazzy.editor.tileset.BaseTileset;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import org.json.JSONObject;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 
 public class WholeTileset extends BaseTileset {
@@ -21,24 +18,6 @@ public class WholeTileset extends BaseTileset {
         super(sourceFile, saveFile, paddingVertical, paddingHorizontal, offsetLeft, offsetUp, tileWidth, tileHeight);
     }
     
-    @Override
-    public void getTilesetImages(BufferedImage image) {
-        int index = 0;
-        
-        for (int row = 0; row < getRows(); row++) {
-            for (int col = 0; col < getColumns(); col++) {
-                BufferedImage subImage = image.getSubimage(
-                        getOffsetLeft() + ((getPaddingHorizontal() + getTileWidth()) * col),
-                        getOffsetUp() + ((getPaddingVertical() + getTileHeight()) * row),
-                        getTileWidth(), getTileHeight());
-                subImage = scale(subImage, SCALE);
-                final WritableImage writableImage = SwingFXUtils.toFXImage(subImage, null);
-                
-                this.getTileImages().put(index++, writableImage);
-            }
-        }
-    }
-    
     @Override
     public void onClick(MouseEvent event) {
     
@@ -56,7 +35,7 @@ public class WholeTileset extends BaseTileset {
     
     @Override
     public void draw(Pane pane) {
-        for (int i = 0; i < this.getTileImages().size; i++) {
+        for (int i = 0; i < this.getTileCount(); i++) {
             TilesetImageView iv = new TilesetImageView(this, i);
             iv.setVisible(true);
             iv.setTranslateX(((i % getColumns()) * (this.getTileWidth())));
@@ -0,0 +1,72 @@
+package com.ktar5.jazzy.editor.tileset;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts the image of a tileset into its atlas on the common fork/join pool.
+ * <p>
+ * The image is split into bands of whole rows of tiles, which are split in half until they are small enough,
+ * and every band converts its pixels into its own part of a shared buffer. The buffer is written into the
+ * atlas in one go once every band is done, so the result doesn't depend on the order the bands ran in.
+ */
+class AtlasConverter extends RecursiveAction {
+    //Bands with at most this many rows of tiles are converted by a single task
+    private static final int ROWS_PER_TASK = 2;
+    
+    private final BufferedImage image;
+    private final int[] pixels;
+    //The first pixel row of the first row of tiles, and the pixel rows from one row of tiles to the next
+    private final int offset, stride;
+    //The rows of tiles in the whole image, and the ones converted by this task, exclusive
+    private final int rows, fromRow, toRow;
+    
+    private AtlasConverter(BufferedImage image, int[] pixels, int offset, int stride, int rows, int fromRow, int toRow) {
+        this.image = image;
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.rows = rows;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+    }
+    
+    /**
+     * Converts an image into an atlas.
+     *
+     * @param offset the first pixel row of the first row of tiles
+     * @param stride the pixel rows from one row of tiles to the next, including padding
+     */
+    static WritableImage convert(BufferedImage image, int offset, int stride) {
+        int width = image.getWidth(), height = image.getHeight();
+        int rows = stride <= 0 ? 1 : Math.max(1, (height - offset) / stride);
+        int[] pixels = new int[width * height];
+        ForkJoinPool.commonPool().invoke(new AtlasConverter(image, pixels, offset, stride, rows, 0, rows));
+        
+        WritableImage atlas = new WritableImage(width, height);
+        atlas.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return atlas;
+    }
+    
+    @Override
+    protected void compute() {
+        if (toRow - fromRow > ROWS_PER_TASK) {
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new AtlasConverter(image, pixels, offset, stride, rows, fromRow, middle),
+                    new AtlasConverter(image, pixels, offset, stride, rows, middle, toRow));
+            return;
+        }
+        //The first and last band also cover the margins above and below the tiles
+        int startY = fromRow == 0 ? 0 : offset + (fromRow * stride);
+        int endY = toRow == rows ? image.getHeight() : offset + (toRow * stride);
+        if (endY > startY) {
+            int width = image.getWidth();
+            image.getRGB(0, startY, width, endY - startY, pixels, startY * width, width);
+        }
+    }
+    
+}
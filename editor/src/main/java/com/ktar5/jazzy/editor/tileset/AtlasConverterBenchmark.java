@@ -0,0 +1,60 @@
+package com.ktar5.jazzy.editor.tileset;
+
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import javafx.embed.swing.SwingFXUtils;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares converting the image of a tileset into its atlas through {@link AtlasConverter} with the way
+ * atlases used to be converted, which was {@link SwingFXUtils#toFXImage} on a single thread.
+ * <p>
+ * Run it with the amount of tiles per side as the only argument, 256 by default. It generates a sheet of
+ * random tiles in the format png files are read in, converts it a few times both ways, and prints the average
+ * time along with the parallelism of the common pool, since that is what the converter runs on.
+ */
+public class AtlasConverterBenchmark {
+    private static final int TILE_SIZE = 16, WARMUP = 2, RUNS = 5;
+    
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        //Images can't be created before the toolkit is started
+        new JFXPanel();
+        
+        BufferedImage image = new BufferedImage(size * TILE_SIZE, size * TILE_SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+        Random random = new Random(0);
+        int[] tile = new int[TILE_SIZE * TILE_SIZE];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int i = 0; i < tile.length; i++) {
+                    tile[i] = random.nextInt();
+                }
+                image.setRGB(x * TILE_SIZE, y * TILE_SIZE, TILE_SIZE, TILE_SIZE, tile, 0, TILE_SIZE);
+            }
+        }
+        System.out.println("Sheet of " + size + "x" + size + " tiles, " + image.getWidth() + "x" + image.getHeight()
+                + " pixels, common pool parallelism of " + ForkJoinPool.getCommonPoolParallelism());
+        
+        measure("Converted by rows of tiles", () -> AtlasConverter.convert(image, 0, TILE_SIZE));
+        measure("Converted on one thread", () -> SwingFXUtils.toFXImage(image, null));
+        Platform.exit();
+    }
+    
+    private static void measure(String name, Runnable conversion) {
+        for (int i = 0; i < WARMUP; i++) {
+            conversion.run();
+        }
+        long time = 0;
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            long start = System.nanoTime();
+            conversion.run();
+            time += System.nanoTime() - start;
+        }
+        System.out.println(name + ": " + (time / RUNS / 1_000_000) + "ms");
+    }
+    
+}
@@ -3,30 +3,60 @@ package com.ktar5.jazzy.editor.tileset;
 import com.ktar5.jazzy.editor.properties.RootProperty;
 import com.ktar5.jazzy.editor.util.Tabbable;
 import com.ktar5.utilities.annotation.callsuper.CallSuper;
-import javafx.embed.swing.SwingFXUtils;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.imgscalr.Scalr;
 import org.json.JSONObject;
-import org.mini2Dx.gdx.utils.IntMap;
+import org.pmw.tinylog.Logger;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * A tileset is a single image that is cut into tiles of the same size.
+ * <p>
+ * The tiles are loaded once into the atlas of the tileset, and are only ever drawn as a source rectangle
+ * of it, see {@link #getTileViewport(int)}. Every tile therefore shares the same texture, and a tile costs
+ * nothing on top of the atlas, no matter how many tiles the tileset has. Tiles with exactly the same pixels
+ * are only stored once in the atlas, see {@link DeduplicatedTiles}.
+ * <p>
+ * The source image is converted by rows of tiles in parallel, see {@link AtlasConverter}, and kept in the
+ * {@link TilesetImageCache} so that opening the tileset again doesn't decode the image.
+ * <p>
+ * Opening a tileset only reads the size of its image. The atlas is loaded the first time it is used,
+ * and only softly referenced by the tileset, so the atlas of a tileset that nothing shows anymore can be
+ * collected when memory runs low, and is loaded again from the cache the next time it is needed.
+ * Views that show the atlas keep it from being collected, see {@link DeduplicatedTiles}.
+ */
 @Getter
 public abstract class BaseTileset implements Tabbable {
     public static final int SCALE = 1;
     private RootProperty rootProperty;
     
     private UUID id;
-    private IntMap<Image> tileImages;
-    private Image originalImage;
+    //The tiles, packed into an atlas without duplicates. Loaded on first use, see getTiles()
+    @Getter(AccessLevel.NONE)
+    private SoftReference<DeduplicatedTiles> tiles = new SoftReference<>(null);
+    //Set once loading the atlas failed, so that it isn't tried again on every paint, see retryAtlas()
+    @Getter(AccessLevel.NONE)
+    private boolean atlasFailed;
+    //The key of the atlas in the tileset image cache, hashed from the source image the first time it is loaded
+    @Getter(AccessLevel.NONE)
+    private String cacheKey;
     private File sourceFile, saveFile;
     private int tileWidth, tileHeight;
     private int paddingVertical, paddingHorizontal;
@@ -79,16 +109,14 @@ public abstract class BaseTileset implements Tabbable {
         
         this.paddingHorizontal = paddingHorizontal;
         this.paddingVertical = paddingVertical;
-        tileImages = new IntMap<>();
         this.id = UUID.randomUUID();
         try {
-            final BufferedImage readImage = ImageIO.read(sourceFile);
-            columns = (readImage.getWidth() - getOffsetLeft()) / (getTileWidth() + getPaddingHorizontal());
-            rows = (readImage.getHeight() - getOffsetUp()) / (getTileHeight() + getPaddingVertical());
-            originalImage = SwingFXUtils.toFXImage(readImage, null);
+            //Only the header of the image is read here, the pixels are decoded once the atlas is used
+            int[] imageSize = readImageSize(sourceFile);
+            columns = (imageSize[0] - getOffsetLeft()) / (getTileWidth() + getPaddingHorizontal());
+            rows = (imageSize[1] - getOffsetUp()) / (getTileHeight() + getPaddingVertical());
             this.dimensionX = columns * getTileWidth();
             this.dimensionY = rows * getTileHeight();
-            getTilesetImages(readImage);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -100,6 +128,103 @@ public abstract class BaseTileset implements Tabbable {
         this.paddingVertical = paddingVertical * SCALE;
     }
     
+    /**
+     * @return the width and height of an image, read from its header without decoding its pixels
+     */
+    private static int[] readImageSize(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Can't read image: " + file.getPath());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Gets the tiles of the tileset, which are loaded if they haven't been used yet or were collected since.
+     *
+     * @return the tiles, or null if they couldn't be loaded
+     */
+    public DeduplicatedTiles getTiles() {
+        DeduplicatedTiles loaded = tiles.get();
+        if (loaded == null && !atlasFailed) {
+            try {
+                long start = System.nanoTime();
+                loaded = DeduplicatedTiles.build(loadImage(), this);
+                tiles = new SoftReference<>(loaded);
+                Logger.debug("Tileset " + sourceFile.getName() + " has " + loaded.getTileCount() + " tiles, "
+                        + loaded.getUniqueCount() + " unique and " + loaded.getEmptyCount() + " empty, loaded in "
+                        + ((System.nanoTime() - start) / 1000000) + "ms");
+            } catch (IOException | RuntimeException e) {
+                Logger.error(e, "Failed to load the image of tileset " + getSourceFile().getName());
+                atlasFailed = true;
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Lets the atlas be loaded again after loading it failed, called whenever the tileset is opened
+     * or added to a map again, so that a fixed image shows up without restarting the editor.
+     */
+    public void retryAtlas() {
+        atlasFailed = false;
+    }
+    
+    /**
+     * Gets the atlas of the tileset, which is loaded if it hasn't been used yet or was collected since.
+     *
+     * @return the atlas, or null if it couldn't be loaded
+     */
+    public Image getAtlas() {
+        DeduplicatedTiles loaded = getTiles();
+        return loaded == null ? null : loaded.getAtlas();
+    }
+    
+    /**
+     * @return true if the atlas is currently in memory
+     */
+    public boolean isAtlasLoaded() {
+        return tiles.get() != null;
+    }
+    
+    /**
+     * @return the source image scaled by SCALE, from the tileset image cache if it is in there
+     */
+    private Image loadImage() throws IOException {
+        long start = System.nanoTime();
+        if (cacheKey == null) {
+            //The fields are scaled already, the key is made of the values the tileset was created with.
+            //Hashing reads the whole source image, so an atlas that was collected is loaded again without it.
+            cacheKey = TilesetImageCache.key(sourceFile, tileWidth / SCALE, tileHeight / SCALE,
+                    paddingVertical / SCALE, paddingHorizontal / SCALE, offsetLeft / SCALE, offsetUp / SCALE, SCALE);
+        }
+        Image image = TilesetImageCache.read(cacheKey);
+        if (image != null) {
+            Logger.debug("Loaded the image of " + sourceFile.getName() + " from the tileset cache in "
+                    + ((System.nanoTime() - start) / 1000000) + "ms");
+            return image;
+        }
+        
+        final BufferedImage readImage = ImageIO.read(sourceFile);
+        if (readImage == null) {
+            throw new IOException("Can't read image: " + sourceFile.getPath());
+        }
+        image = AtlasConverter.convert(SCALE == 1 ? readImage : scale(readImage, SCALE), offsetUp, tileHeight + paddingVertical);
+        Logger.debug("Converted " + sourceFile.getName() + " (" + readImage.getWidth() + "x" + readImage.getHeight()
+                + ") into an atlas in " + ((System.nanoTime() - start) / 1000000) + "ms on "
+                + ForkJoinPool.getCommonPoolParallelism() + " threads");
+        TilesetImageCache.write(cacheKey, image);
+        return image;
+    }
+    
     /**
      * Scales an image using a proper image scaling library.
      *
@@ -112,11 +237,62 @@ public abstract class BaseTileset implements Tabbable {
     }
     
     /**
-     * Initializes and sets {@link BaseTileset#tileImages}
+     * @return the amount of tiles in the tileset
+     */
+    public int getTileCount() {
+        return columns * rows;
+    }
+    
+    /**
+     * @return the bytes used by the pixels of the atlas, 0 while it isn't in memory
+     */
+    public long getMemorySize() {
+        DeduplicatedTiles loaded = tiles.get();
+        return loaded == null ? 0 : (long) loaded.getAtlas().getWidth() * (long) loaded.getAtlas().getHeight() * 4;
+    }
+    
+    /**
+     * Gets the part of the atlas that holds a tile, which is shared with every tile that has the same pixels.
      *
-     * @param image
+     * @param tileId the id of the tile
+     * @return the source rectangle of the tile in the atlas, or null if there is no tile with the given id
      */
-    public abstract void getTilesetImages(BufferedImage image);
+    public Rectangle2D getTileViewport(int tileId) {
+        DeduplicatedTiles loaded = tileId < 0 || tileId >= getTileCount() ? null : getTiles();
+        return loaded == null ? null : loaded.getViewport(tileId);
+    }
+    
+    /**
+     * Gets the part of the source image that holds a tile, tiles are numbered left to right, top to bottom.
+     * Subclasses with a different layout of tiles should override this.
+     *
+     * @param tileId the id of the tile, which is always a valid id
+     * @return the rectangle of the tile in the source image, scaled by SCALE
+     */
+    protected Rectangle2D getSourceViewport(int tileId) {
+        int col = tileId % columns, row = tileId / columns;
+        return new Rectangle2D(offsetLeft + ((paddingHorizontal + tileWidth) * col),
+                offsetUp + ((paddingVertical + tileHeight) * row), tileWidth, tileHeight);
+    }
+    
+    /**
+     * Draws a tile from the atlas, stretched to the given size.
+     *
+     * @return false if there is no tile with the given id, in which case nothing was drawn
+     */
+    public boolean drawTile(GraphicsContext graphics, int tileId, double x, double y, double width, double height) {
+        DeduplicatedTiles loaded = tileId < 0 || tileId >= getTileCount() ? null : getTiles();
+        if (loaded == null) {
+            return false;
+        }
+        if (loaded.isEmpty(tileId)) {
+            return true;
+        }
+        Rectangle2D viewport = loaded.getViewport(tileId);
+        graphics.drawImage(loaded.getAtlas(), viewport.getMinX(), viewport.getMinY(), viewport.getWidth(), viewport.getHeight(),
+                x, y, width, height);
+        return true;
+    }
     
     @Override
     @CallSuper
@@ -0,0 +1,197 @@
+package com.ktar5.jazzy.editor.tileset;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The tiles of a tileset, with every set of tiles that have exactly the same pixels stored only once.
+ * <p>
+ * Tiles are hashed by their pixels, and tiles with the same hash are compared pixel by pixel. The first tile
+ * with some pixels is the original, every later one is a duplicate of it. Tiles that are fully transparent
+ * are empty, no matter the color of their pixels, and are duplicates of the first empty tile.
+ * <p>
+ * Only the originals are packed into the atlas, so ids stay the same, but every duplicate costs nothing.
+ * Every tile in the atlas is surrounded by a copy of its edge pixels, so a tile that is drawn scaled
+ * never blends in the pixels of the tile next to it.
+ */
+@Getter
+public class DeduplicatedTiles {
+    //The pixels around every tile in the atlas that repeat its edge
+    private static final int GUTTER = 1;
+    
+    //The atlas with only the original tiles, packed in a grid with a gutter around every tile
+    private final Image atlas;
+    private final int tileWidth, tileHeight;
+    //The amount of tiles, and the amount of originals among them
+    private final int tileCount, uniqueCount;
+    @Getter(AccessLevel.NONE)
+    private final int[] originalIds;
+    @Getter(AccessLevel.NONE)
+    private final int[] slots;
+    @Getter(AccessLevel.NONE)
+    private final BitSet empty;
+    @Getter(AccessLevel.NONE)
+    private final int atlasColumns;
+    
+    private DeduplicatedTiles(Image atlas, int tileWidth, int tileHeight, int[] originalIds, int[] slots,
+                              BitSet empty, int uniqueCount, int atlasColumns) {
+        this.atlas = atlas;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tileCount = originalIds.length;
+        this.originalIds = originalIds;
+        this.slots = slots;
+        this.empty = empty;
+        this.uniqueCount = uniqueCount;
+        this.atlasColumns = atlasColumns;
+    }
+    
+    /**
+     * Finds the duplicate tiles of a tileset, and packs its original tiles into a new atlas.
+     *
+     * @param source the image of the tileset, scaled like the tileset
+     */
+    static DeduplicatedTiles build(Image source, BaseTileset tileset) {
+        int tileWidth = tileset.getTileWidth(), tileHeight = tileset.getTileHeight();
+        int tileCount = tileset.getTileCount();
+        PixelReader reader = source.getPixelReader();
+        
+        int[] originalIds = new int[tileCount];
+        int[] slots = new int[tileCount];
+        BitSet empty = new BitSet(tileCount);
+        //Pixels of the original tiles, by slot, and the slots of the originals with a given hash
+        List<int[]> uniquePixels = new ArrayList<>();
+        List<Integer> uniqueIds = new ArrayList<>();
+        HashMap<Integer, List<Integer>> slotsByHash = new HashMap<>();
+        
+        for (int id = 0; id < tileCount; id++) {
+            int[] pixels = new int[tileWidth * tileHeight];
+            Rectangle2D viewport = tileset.getSourceViewport(id);
+            reader.getPixels((int) viewport.getMinX(), (int) viewport.getMinY(), tileWidth, tileHeight,
+                    PixelFormat.getIntArgbInstance(), pixels, 0, tileWidth);
+            if (isTransparent(pixels)) {
+                //Every empty tile is the same, whatever color its transparent pixels have
+                Arrays.fill(pixels, 0);
+                empty.set(id);
+            }
+            
+            int hash = Arrays.hashCode(pixels);
+            List<Integer> candidates = slotsByHash.computeIfAbsent(hash, key -> new ArrayList<>(1));
+            int slot = -1;
+            for (int candidate : candidates) {
+                if (Arrays.equals(uniquePixels.get(candidate), pixels)) {
+                    slot = candidate;
+                    break;
+                }
+            }
+            if (slot == -1) {
+                slot = uniquePixels.size();
+                uniquePixels.add(pixels);
+                uniqueIds.add(id);
+                candidates.add(slot);
+            }
+            slots[id] = slot;
+            originalIds[id] = uniqueIds.get(slot);
+        }
+        
+        int uniqueCount = uniquePixels.size();
+        int atlasColumns = Math.max(1, (int) Math.ceil(Math.sqrt(uniqueCount)));
+        int atlasRows = Math.max(1, (uniqueCount + atlasColumns - 1) / atlasColumns);
+        int slotWidth = tileWidth + (GUTTER * 2), slotHeight = tileHeight + (GUTTER * 2);
+        Atlas atlas = new Atlas(atlasColumns * slotWidth, atlasRows * slotHeight);
+        PixelWriter writer = atlas.getPixelWriter();
+        for (int slot = 0; slot < uniqueCount; slot++) {
+            if (!empty.get(uniqueIds.get(slot))) {
+                writer.setPixels((slot % atlasColumns) * slotWidth, (slot / atlasColumns) * slotHeight, slotWidth, slotHeight,
+                        PixelFormat.getIntArgbInstance(), extrude(uniquePixels.get(slot), tileWidth, tileHeight), 0, slotWidth);
+            }
+        }
+        DeduplicatedTiles tiles = new DeduplicatedTiles(atlas, tileWidth, tileHeight, originalIds, slots, empty, uniqueCount, atlasColumns);
+        atlas.tiles = tiles;
+        return tiles;
+    }
+    
+    /**
+     * @return the pixels of a tile with a gutter around it, which repeats the pixels at the edge of the tile
+     */
+    private static int[] extrude(int[] pixels, int width, int height) {
+        int slotWidth = width + (GUTTER * 2), slotHeight = height + (GUTTER * 2);
+        int[] extruded = new int[slotWidth * slotHeight];
+        for (int y = 0; y < slotHeight; y++) {
+            int sourceY = Math.min(Math.max(y - GUTTER, 0), height - 1);
+            for (int x = 0; x < slotWidth; x++) {
+                int sourceX = Math.min(Math.max(x - GUTTER, 0), width - 1);
+                extruded[(y * slotWidth) + x] = pixels[(sourceY * width) + sourceX];
+            }
+        }
+        return extruded;
+    }
+    
+    private static boolean isTransparent(int[] pixels) {
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return the part of the atlas that holds the given tile, which is shared by all of its duplicates
+     */
+    public Rectangle2D getViewport(int tileId) {
+        int slot = slots[tileId];
+        return new Rectangle2D(((slot % atlasColumns) * (tileWidth + (GUTTER * 2))) + GUTTER,
+                ((slot / atlasColumns) * (tileHeight + (GUTTER * 2))) + GUTTER, tileWidth, tileHeight);
+    }
+    
+    /**
+     * @return the id of the first tile with the same pixels as the given one, which is itself if it isn't a duplicate
+     */
+    public int getOriginalId(int tileId) {
+        return originalIds[tileId];
+    }
+    
+    public boolean isDuplicate(int tileId) {
+        return originalIds[tileId] != tileId;
+    }
+    
+    /**
+     * @return true if every pixel of the tile is transparent
+     */
+    public boolean isEmpty(int tileId) {
+        return empty.get(tileId);
+    }
+    
+    /**
+     * @return the amount of empty tiles
+     */
+    public int getEmptyCount() {
+        return empty.cardinality();
+    }
+    
+    /**
+     * The atlas keeps its tiles reachable. Tilesets only hold their tiles softly, so as long as any view
+     * still shows the atlas, the tiles can't be collected and loaded a second time next to it.
+     */
+    private static class Atlas extends WritableImage {
+        private DeduplicatedTiles tiles;
+        
+        private Atlas(int width, int height) {
+            super(width, height);
+        }
+    }
+    
+}
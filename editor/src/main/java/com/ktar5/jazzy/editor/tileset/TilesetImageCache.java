@@ -0,0 +1,149 @@
+package com.ktar5.jazzy.editor.tileset;
+
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import com.ktar5.jazzy.editor.util.BackgroundSaver;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps the atlases of tilesets on disk as raw pixels, so that opening a tileset again skips decoding its image.
+ * <p>
+ * Atlases are keyed by a hash of the content of the source image and every parameter used to build the atlas,
+ * so editing the image or the tileset never finds a stale atlas. A cached atlas is a header of
+ * {magic, version, width, height} followed by its pixels as argb ints, and is memory mapped when it is read.
+ * <p>
+ * The least recently used atlases are deleted once the cache grows over {@link #MAX_SIZE} bytes.
+ */
+public class TilesetImageCache {
+    public static final File DIRECTORY = new File(System.getProperty("user.home"), ".jazzy" + File.separator + "tilesets");
+    public static final long MAX_SIZE = 512L << 20;
+    private static final String EXTENSION = ".atlas";
+    private static final int MAGIC = 0x4A5A4154, VERSION = 1, HEADER_SIZE = 16;
+    
+    private TilesetImageCache() {
+    }
+    
+    /**
+     * Hashes the content of the source image together with the parameters the atlas is built with.
+     *
+     * @return the key of the atlas in the cache
+     */
+    public static String key(File sourceFile, int... parameters) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform has to support SHA-1
+            throw new RuntimeException(e);
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(sourceFile)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        ByteBuffer parameterBytes = ByteBuffer.allocate((parameters.length + 1) * 4);
+        parameterBytes.putInt(VERSION);
+        for (int parameter : parameters) {
+            parameterBytes.putInt(parameter);
+        }
+        digest.update(parameterBytes.array());
+        
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+    
+    /**
+     * @return the cached atlas with the given key, or null if it isn't cached or can't be read
+     */
+    public static WritableImage read(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a cached atlas");
+            }
+            int width = buffer.getInt(), height = buffer.getInt();
+            if (width <= 0 || height <= 0 || buffer.remaining() != (long) width * height * 4) {
+                throw new IOException("Cached atlas has the wrong size");
+            }
+            
+            WritableImage atlas = new WritableImage(width, height);
+            IntBuffer pixels = buffer.asIntBuffer();
+            atlas.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, width);
+            //The modification time doubles as the last time the atlas was used
+            file.setLastModified(System.currentTimeMillis());
+            return atlas;
+        } catch (IOException e) {
+            Logger.warn("Ignoring unreadable cached atlas " + file.getPath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Stores an atlas in the cache. The pixels are copied right away, and written on the background saver.
+     */
+    public static void write(String key, Image atlas) {
+        int width = (int) atlas.getWidth(), height = (int) atlas.getHeight();
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + (width * height * 4));
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+        int[] pixels = new int[width * height];
+        atlas.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        bytes.asIntBuffer().put(pixels);
+        
+        File file = getFile(key);
+        BackgroundSaver.get().saveQuietly("cached atlas " + file.getName(), () -> {
+            AtomicFileWriter.write(file, output -> output.write(bytes.array()));
+            prune();
+        });
+    }
+    
+    /**
+     * Deletes the least recently used atlases until the cache fits in {@link #MAX_SIZE}.
+     */
+    private static void prune() {
+        File[] files = DIRECTORY.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && size > MAX_SIZE; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+    
+    private static File getFile(String key) {
+        return new File(DIRECTORY, key + EXTENSION);
+    }
+    
+}
@@ -1,32 +1,48 @@
 package com.ktar5.jazzy.editor.tileset;
 
 import com.ktar5.jazzy.editor.coordination.EditorCoordinator;
+import com.ktar5.jazzy.editor.gui.centerview.tabs.AbstractTab;
 import com.ktar5.jazzy.editor.gui.centerview.tabs.TilesetTab;
 import com.ktar5.jazzy.editor.gui.dialogs.CreateWholeTileset;
 import com.ktar5.jazzy.editor.gui.dialogs.GenericAlert;
 import com.ktar5.jazzy.editor.gui.dialogs.SelectType;
 import com.ktar5.jazzy.editor.tilemap.whole.WholeTileset;
+import com.ktar5.jazzy.editor.util.AtomicFileWriter;
+import com.ktar5.jazzy.editor.util.BackgroundSaver;
 import com.ktar5.jazzy.editor.util.StringUtil;
 import javafx.stage.FileChooser;
 import org.json.JSONObject;
 import org.pmw.tinylog.Logger;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.UUID;
 
+/**
+ * Keeps track of every loaded tileset.
+ * <p>
+ * A tileset is only loaded once, no matter how many maps use it. Tilesets are looked up by the canonical path
+ * of their save file, and every map that uses a tileset, as well as its tab, holds a reference to it.
+ * The tileset is dropped once the last of them is released.
+ */
 public class TilesetManager {
     private static TilesetManager instance;
     private ArrayList<Class<? extends BaseTileset>> registeredTilesetTypes;
     private HashMap<UUID, BaseTileset> tilesetHashMap;
+    private HashMap<String, BaseTileset> tilesetsByPath;
+    private HashMap<UUID, Integer> referenceCounts;
     
     public TilesetManager() {
         this.tilesetHashMap = new HashMap<>();
+        this.tilesetsByPath = new HashMap<>();
+        this.referenceCounts = new HashMap<>();
         this.registeredTilesetTypes = new ArrayList<>();
         
         registerTilemapClass(WholeTileset.class);
@@ -51,12 +67,75 @@ public class TilesetManager {
     }
     
     /**
-     * Removes the tileset with the given id
+     * Releases the reference of the tab of the tileset with the given id, called once the tab is closed
      */
     public void remove(UUID uuid) {
-        if (this.tilesetHashMap.containsKey(uuid)) {
-            Logger.debug("Removed tileset: " + getTileset(uuid).getSaveFile().getName());
-            tilesetHashMap.remove(uuid);
+        release(uuid);
+    }
+    
+    /**
+     * Adds a reference to a loaded tileset, which keeps it loaded until the reference is released.
+     */
+    public void retain(UUID id) {
+        if (!referenceCounts.containsKey(id)) {
+            throw new RuntimeException("BaseTileset with id: " + id + " doesn't exist");
+        }
+        referenceCounts.put(id, referenceCounts.get(id) + 1);
+    }
+    
+    /**
+     * Releases a reference to a tileset, and drops the tileset once nothing references it anymore.
+     */
+    public void release(UUID id) {
+        Integer references = referenceCounts.get(id);
+        if (references == null) {
+            return;
+        }
+        if (references > 1) {
+            referenceCounts.put(id, references - 1);
+            return;
+        }
+        BaseTileset tileset = tilesetHashMap.remove(id);
+        referenceCounts.remove(id);
+        tilesetsByPath.values().remove(tileset);
+        Logger.debug("Removed tileset: " + tileset.getSaveFile().getName() + ", tilesets now use "
+                + (getMemoryUsage() >> 10) + "KB");
+    }
+    
+    /**
+     * @return the amount of references to the tileset with the given id, 0 if it isn't loaded
+     */
+    public int getReferenceCount(UUID id) {
+        return referenceCounts.getOrDefault(id, 0);
+    }
+    
+    /**
+     * @return the bytes used by the atlases of every loaded tileset
+     */
+    public long getMemoryUsage() {
+        long size = 0;
+        for (BaseTileset tileset : tilesetHashMap.values()) {
+            size += tileset.getMemorySize();
+        }
+        return size;
+    }
+    
+    /**
+     * Adds a tileset that was just loaded or created, with a single reference.
+     */
+    private void register(BaseTileset tileset) {
+        tilesetHashMap.put(tileset.getId(), tileset);
+        tilesetsByPath.put(getCanonicalPath(tileset.getSaveFile()), tileset);
+        referenceCounts.put(tileset.getId(), 1);
+        Logger.debug("Loaded tileset: " + tileset.getSaveFile().getName() + " (" + (tileset.getMemorySize() >> 10)
+                + "KB), tilesets now use " + (getMemoryUsage() >> 10) + "KB");
+    }
+    
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
         }
     }
     
@@ -94,12 +173,10 @@ public class TilesetManager {
         }
         
         File tilesetFile = createDialog.getTilesetFile();
-        for (BaseTileset tileset1 : tilesetHashMap.values()) {
-            if (tileset1.getSaveFile().getPath().equals(tilesetFile.getPath())) {
-                new GenericAlert("Tileset with path " + tilesetFile.getAbsolutePath() + " already loaded.\n" +
-                        "Please close tab for " + tilesetFile.getName() + " then try creating new tileset again.");
-                return null;
-            }
+        if (tilesetsByPath.containsKey(getCanonicalPath(tilesetFile))) {
+            new GenericAlert("Tileset with path " + tilesetFile.getAbsolutePath() + " already loaded.\n" +
+                    "Please close tab for " + tilesetFile.getName() + " then try creating new tileset again.");
+            return null;
         }
         
         T tileset;
@@ -115,7 +192,7 @@ public class TilesetManager {
             return null;
         }
         
-        tilesetHashMap.put(tileset.getId(), tileset);
+        register(tileset);
         TilesetTab tab;
         EditorCoordinator.get().getEditor().addTab(tab = new TilesetTab(tileset.getId()));
         tab.draw();
@@ -132,13 +209,51 @@ public class TilesetManager {
     }
     
     /**
-     * Load a tileset of the type specified from the file specified.
+     * Load a tileset of the type specified from the file specified, and open a tab for it.
+     * If the tileset is already loaded, the loaded one is used and its tab is opened if it isn't yet.
      *
      * @param clazz The class to instantiate (ex: WholeTileset.class)
      * @param <T>   The type of tilemap to instantiate (ex: WholeTileset)
      * @return the tileset of type <T> that has been instantiated, otherwise null
      */
     public <T extends BaseTileset> T loadTileset(File loaderFile, Class<? extends T> clazz) {
+        T tileset = acquireTileset(loaderFile, clazz);
+        if (tileset == null) {
+            return null;
+        }
+        if (EditorCoordinator.get().getEditor().getTab(tileset.getId()) != null) {
+            //The tab already holds a reference
+            release(tileset.getId());
+            return tileset;
+        }
+        TilesetTab tilesetTab = new TilesetTab(tileset.getId());
+        EditorCoordinator.get().getEditor().addTab(tilesetTab);
+        tilesetTab.draw();
+        return tileset;
+    }
+    
+    /**
+     * Gets a tileset of the type specified from the file specified, without opening a tab for it.
+     * The tileset is only loaded if it isn't loaded already, and the caller holds a reference to it
+     * until it calls {@link #release(UUID)}.
+     *
+     * @param clazz The class to instantiate (ex: WholeTileset.class)
+     * @param <T>   The type of tilemap to instantiate (ex: WholeTileset)
+     * @return the tileset of type <T>, otherwise null
+     */
+    public <T extends BaseTileset> T acquireTileset(File loaderFile, Class<? extends T> clazz) {
+        BaseTileset loaded = tilesetsByPath.get(getCanonicalPath(loaderFile));
+        if (loaded != null) {
+            if (!clazz.isInstance(loaded)) {
+                new GenericAlert("Tileset with path " + loaderFile.getAbsolutePath() + " is already loaded as a "
+                        + loaded.getClass().getSimpleName());
+                return null;
+            }
+            retain(loaded.getId());
+            loaded.retryAtlas();
+            return clazz.cast(loaded);
+        }
+        
         Logger.info("Beginning to load tileset from file: " + loaderFile.getPath());
         
         String data = StringUtil.readFileAsString(loaderFile);
@@ -155,17 +270,7 @@ public class TilesetManager {
             return null;
         }
         
-        for (BaseTileset temp : tilesetHashMap.values()) {
-            if (temp.getSaveFile().getPath().equals(tileset.getSaveFile().getPath())) {
-                new GenericAlert("Tileset with path " + tileset.getSaveFile().getAbsolutePath() + " already loaded");
-                return clazz.isInstance(temp) ? (T) temp : null;
-            }
-        }
-        
-        tilesetHashMap.put(tileset.getId(), tileset);
-        TilesetTab tilesetTab = new TilesetTab(tileset.getId());
-        EditorCoordinator.get().getEditor().addTab(tilesetTab);
-        tilesetTab.draw();
+        register(tileset);
         Logger.info("Finished loading tileset: " + tileset.getSaveFile().getName());
         return tileset;
     }
@@ -208,24 +313,25 @@ public class TilesetManager {
         }
         
         BaseTileset baseTileset = tilesetHashMap.get(id);
+        File saveFile = baseTileset.getSaveFile();
         
-        if (baseTileset.getSaveFile().exists()) {
-            baseTileset.getSaveFile().delete();
-        }
-        
-        try {
-            baseTileset.getSaveFile().createNewFile();
-            FileWriter writer = new FileWriter(baseTileset.getSaveFile());
-            writer.write(baseTileset.serialize().toString(4));
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Logger.error("An error occured during save");
-            return;
-        }
+        //The serialization is the snapshot, only writing it happens in the background
+        JSONObject json = baseTileset.serialize();
+        AbstractTab tab = EditorCoordinator.get().getEditor().getTab(id);
+        int editCount = tab == null ? 0 : tab.getEditCount();
         
-        EditorCoordinator.get().getEditor().setChanges(baseTileset.getId(), false);
-        Logger.info("Finished save for baseTileset (" + id + ") in " + "\"" + baseTileset.getSaveFile() + "\"");
+        BackgroundSaver.get().save(baseTileset.getName(), () -> AtomicFileWriter.write(saveFile, output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            json.write(writer, 4, 0);
+            writer.flush();
+        }), () -> {
+            //Edits made while saving aren't in the file, so the tab has to stay marked as changed
+            AbstractTab savedTab = EditorCoordinator.get().getEditor().getTab(id);
+            if (savedTab != null && savedTab.getEditCount() == editCount) {
+                savedTab.setEdit(false);
+            }
+            Logger.info("Finished save for baseTileset (" + id + ") in " + "\"" + saveFile + "\"");
+        });
     }
     
     
@@ -28,14 +28,58 @@ public class Tilesets {
     protected void loadTileset(JSONObject json) {
         //TODO
         File tileset = Paths.get(getSaveFile().getPath()).resolve(json.getString("tileset")).toFile();
-        WholeTileset tileset1 = TilesetManager.get().loadTileset(tileset, WholeTileset.class);
+        //Maps that use the same tileset share it, without decoding it again or opening another tab
+        WholeTileset tileset1 = acquire(tileset, WholeTileset.class);
+        if (tileset1 == null) {
+            return;
+        }
         if (tileset1.getTileHeight() != getTileHeight() || tileset1.getTileWidth() != getTileWidth()) {
             new GenericAlert("Tileset's tilesize does not match map's tilesize");
+            remove(tileset1);
             return;
         }
         this.setTileset(tileset1);
     }
     
+    /**
+     * Gets the tileset saved in the given file for the map, loading it if it isn't loaded yet.
+     * The map holds a single reference to every tileset it uses, which is released once the map is closed.
+     *
+     * @return the tileset, or null if it couldn't be loaded
+     */
+    public <T extends BaseTileset> T acquire(File file, Class<? extends T> clazz) {
+        T tileset = TilesetManager.get().acquireTileset(file, clazz);
+        if (tileset == null) {
+            return null;
+        }
+        if (tilesets.contains(tileset)) {
+            //The map already holds a reference to it
+            TilesetManager.get().release(tileset.getId());
+        } else {
+            tilesets.add(tileset);
+        }
+        return tileset;
+    }
+    
+    /**
+     * Stops using a tileset, and releases the reference of the map to it.
+     */
+    public void remove(BaseTileset tileset) {
+        if (tilesets.remove(tileset)) {
+            TilesetManager.get().release(tileset.getId());
+        }
+    }
+    
+    /**
+     * Releases every tileset of the map, called once the map is closed.
+     */
+    public void release() {
+        for (BaseTileset tileset : tilesets) {
+            TilesetManager.get().release(tileset.getId());
+        }
+        tilesets.clear();
+    }
+    
     public JSONArray serialize() {
         JSONArray json = new JSONArray();
         for (int i = 0; i < tilesets.size(); i++) {
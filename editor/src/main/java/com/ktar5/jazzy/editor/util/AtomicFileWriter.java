@@ -0,0 +1,109 @@
+package com.ktar5.jazzy.editor.util;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces files so that a crash or an error while writing never leaves a partially written file behind.
+ * <p>
+ * The content is written to a temporary file next to the target, forced to disk, and then moved
+ * over the target in a single atomic rename. Until the rename, the old file is left untouched.
+ */
+public final class AtomicFileWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    private AtomicFileWriter() {
+    }
+    
+    /**
+     * Atomically replaces the target file with the content written by the given output.
+     *
+     * @param target the file to replace, which doesn't have to exist yet
+     * @param output writes the content of the file to a buffered stream, it doesn't have to close the stream
+     */
+    public static void write(File target, Output output) throws IOException {
+        Path path = target.getAbsoluteFile().toPath();
+        Path directory = path.getParent();
+        Files.createDirectories(directory);
+        
+        //The temp file has to be in the same directory, renames across file systems aren't atomic
+        Path temp = directory.resolve("." + path.getFileName() + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        boolean created = false, moved = false;
+        try {
+            //Created like any other new file, unlike Files.createTempFile which makes it private to the owner
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                created = true;
+                OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                output.writeTo(stream);
+                stream.flush();
+                channel.force(true);
+            }
+            copyPermissions(path, temp);
+            move(temp, path);
+            moved = true;
+        } finally {
+            if (created && !moved) {
+                deleteTemp(temp);
+            }
+        }
+        syncDirectory(directory);
+    }
+    
+    /**
+     * Gives the temp file the permissions of the file it replaces, so saving never changes who can read it.
+     */
+    private static void copyPermissions(Path target, Path temp) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        if (view != null && Files.exists(target)) {
+            view.setPermissions(Files.getPosixFilePermissions(target));
+        }
+    }
+    
+    //Runs while a failure is thrown, so failing to clean up must not replace it
+    private static void deleteTemp(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            Logger.warn(e, "Could not delete temp file: " + temp);
+        }
+    }
+    
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Logger.warn("Atomic moves aren't supported for: " + target + ", falling back to a plain move");
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Forces the rename itself to disk. Not every platform can open a directory, so this is best effort.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //Expected on Windows
+        }
+    }
+    
+    @FunctionalInterface
+    public interface Output {
+        void writeTo(OutputStream stream) throws IOException;
+    }
+    
+}
@@ -0,0 +1,118 @@
+package com.ktar5.jazzy.editor.util;
+
+import com.ktar5.jazzy.editor.Main;
+import com.ktar5.jazzy.editor.gui.dialogs.GenericAlert;
+import javafx.application.Platform;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs saves on a single background thread so that serializing and writing large files
+ * doesn't freeze the editor. Saves run one after another in the order they were submitted,
+ * so two saves of the same file can never interleave.
+ * <p>
+ * Everything that reads editor state must happen before a save is submitted (see
+ * {@link com.ktar5.jazzy.editor.tilemap.io.TilemapSnapshot}), the save itself only writes.
+ */
+public class BackgroundSaver {
+    private static BackgroundSaver instance;
+    private final ExecutorService executor;
+    //Only touched on the JavaFX application thread
+    private int pendingSaves;
+    
+    public BackgroundSaver() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Jazzy Save"));
+    }
+    
+    /**
+     * Gets the instance of the BackgroundSaver
+     */
+    public static BackgroundSaver get() {
+        if (instance == null) {
+            instance = new BackgroundSaver();
+        }
+        return instance;
+    }
+    
+    /**
+     * Submits a save. Must be called from the JavaFX application thread.
+     *
+     * @param name      the name shown in the progress indicator while saving
+     * @param save      the save to run on the background thread
+     * @param onSuccess called on the JavaFX application thread once the save has finished
+     */
+    public void save(String name, Save save, Runnable onSuccess) {
+        pendingSaves++;
+        updateProgress("Saving " + name + "...");
+        executor.execute(() -> {
+            //Errors are caught as well, or an OutOfMemoryError would leave the save pending forever
+            Throwable error = null;
+            try {
+                save.run();
+            } catch (Throwable e) {
+                error = e;
+            }
+            final Throwable result = error;
+            Platform.runLater(() -> finish(name, result, onSuccess));
+        });
+    }
+    
+    /**
+     * Submits a save that runs without any progress indication, and that only logs errors.
+     * Used for saves that happen automatically, which the user never asked for.
+     *
+     * @param name the name used in the log if the save fails
+     * @param save the save to run on the background thread
+     */
+    public void saveQuietly(String name, Save save) {
+        executor.execute(() -> {
+            try {
+                save.run();
+            } catch (Throwable e) {
+                Logger.error(e, "An error occured during save of " + name);
+            }
+        });
+    }
+    
+    private void finish(String name, Throwable error, Runnable onSuccess) {
+        pendingSaves--;
+        if (error == null) {
+            onSuccess.run();
+            updateProgress("Saved " + name);
+        } else {
+            Logger.error(error, "An error occured during save of " + name);
+            updateProgress("Failed to save " + name);
+            new GenericAlert("Failed to save " + name + ":\n" + error.getMessage());
+        }
+    }
+    
+    private void updateProgress(String text) {
+        if (Main.root != null) {
+            Main.root.getBottomBar().setProgress(text, pendingSaves > 0);
+        }
+    }
+    
+    /**
+     * Waits for every submitted save to finish, used when the application exits.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Logger.error("Timed out waiting for saves to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @FunctionalInterface
+    public interface Save {
+        void run() throws IOException;
+    }
+    
+}
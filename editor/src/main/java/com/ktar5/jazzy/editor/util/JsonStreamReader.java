@@ -0,0 +1,380 @@
+package com.ktar5.jazzy.editor.util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A minimal pull parser for json documents. Unlike {@link JSONObject}, it reads the document
+ * token by token from a {@link Reader}, so large documents never have to be held in memory
+ * as a single string.
+ * <p>
+ * The reader keeps a stack of the objects and arrays it is in, so it knows which separator has to come
+ * before the next name or value, and malformed documents fail with a {@link JSONException}.
+ */
+public class JsonStreamReader implements Closeable {
+    //What the reader is in, and what it has read of it so far
+    private static final int EMPTY_DOCUMENT = 0, NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2, NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4, NONEMPTY_OBJECT = 5, DANGLING_NAME = 6;
+    
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position, limit;
+    private long offset;
+    
+    private int[] scopes = new int[32];
+    private int depth = 1;
+    //Set once the comma or colon before the next element has been read
+    private boolean separated;
+    
+    public JsonStreamReader(Reader reader) {
+        this.reader = reader;
+        scopes[0] = EMPTY_DOCUMENT;
+    }
+    
+    public void beginObject() throws IOException {
+        beginElement(false);
+        expect('{');
+        push(EMPTY_OBJECT);
+    }
+    
+    public void endObject() throws IOException {
+        endContainer('}', EMPTY_OBJECT, NONEMPTY_OBJECT);
+    }
+    
+    public void beginArray() throws IOException {
+        beginElement(false);
+        expect('[');
+        push(EMPTY_ARRAY);
+    }
+    
+    public void endArray() throws IOException {
+        endContainer(']', EMPTY_ARRAY, NONEMPTY_ARRAY);
+    }
+    
+    /**
+     * @return true if the current object or array has another element
+     */
+    public boolean hasNext() throws IOException {
+        int c = peekElement();
+        return c != '}' && c != ']' && c != -1;
+    }
+    
+    public String nextName() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        beginElement(true);
+        readString(builder);
+        return builder.toString();
+    }
+    
+    public String nextString() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        nextString(builder);
+        return builder.toString();
+    }
+    
+    /**
+     * Reads the next string into the given builder, replacing its contents.
+     * This allows a single builder to be reused for many strings.
+     */
+    public void nextString(StringBuilder builder) throws IOException {
+        beginElement(false);
+        readString(builder);
+    }
+    
+    private void readString(StringBuilder builder) throws IOException {
+        builder.setLength(0);
+        expect('"');
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                builder.append(readEscape());
+            } else {
+                builder.append((char) c);
+            }
+        }
+    }
+    
+    /**
+     * Reads the next value, building {@link JSONObject}s and {@link JSONArray}s for nested values.
+     * Only use this for values that are known to be small.
+     */
+    public Object nextValue() throws IOException {
+        int c = peekElement();
+        switch (c) {
+            case '{': {
+                JSONObject json = new JSONObject();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    json.put(name, nextValue());
+                }
+                endObject();
+                return json;
+            }
+            case '[': {
+                JSONArray json = new JSONArray();
+                beginArray();
+                while (hasNext()) {
+                    json.put(nextValue());
+                }
+                endArray();
+                return json;
+            }
+            case '"':
+                return nextString();
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                beginElement(false);
+                return JSONObject.stringToValue(nextLiteral());
+        }
+    }
+    
+    /**
+     * Skips the next value, including everything nested in it, without building any objects.
+     */
+    public void skipValue() throws IOException {
+        int c = peekElement();
+        switch (c) {
+            case '{':
+                beginObject();
+                while (hasNext()) {
+                    beginElement(true);
+                    skipString();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case '[':
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case '"':
+                beginElement(false);
+                skipString();
+                break;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                beginElement(false);
+                nextLiteral();
+        }
+    }
+    
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            }
+        }
+    }
+    
+    private String nextLiteral() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            int c = peek();
+            if (c == -1 || c == ',' || c == ':' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            builder.append((char) c);
+            position++;
+        }
+        if (builder.length() == 0) {
+            throw syntaxError("Expected a value");
+        }
+        return builder.toString();
+    }
+    
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u': {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) + digit;
+                }
+                return (char) value;
+            }
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+    
+    private void expect(char expected) throws IOException {
+        int c = peekToken();
+        if (c != expected) {
+            throw syntaxError("Expected '" + expected + "' but found " + (c == -1 ? "end of document" : "'" + (char) c + "'"));
+        }
+        position++;
+    }
+    
+    /**
+     * Reads the comma or colon that has to come before the next element, if there is one,
+     * then returns the first character of the element without consuming it.
+     */
+    private int peekElement() throws IOException {
+        int c = peekToken();
+        if (separated) {
+            return c;
+        }
+        int scope = scopes[depth - 1];
+        if ((scope == NONEMPTY_ARRAY || scope == NONEMPTY_OBJECT) && c == ',') {
+            position++;
+            separated = true;
+            c = peekToken();
+            if (c == ']' || c == '}') {
+                throw syntaxError("Expected a value after ','");
+            }
+        } else if (scope == DANGLING_NAME) {
+            if (c != ':') {
+                throw syntaxError("Expected ':' after a name");
+            }
+            position++;
+            separated = true;
+            c = peekToken();
+        }
+        return c;
+    }
+    
+    /**
+     * Checks that a name or value may come next, and moves past the separator before it.
+     *
+     * @param name true for the name of an object member, false for a value
+     */
+    private void beginElement(boolean name) throws IOException {
+        peekElement();
+        int scope = scopes[depth - 1];
+        boolean inObject = scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT;
+        if (name != inObject) {
+            throw syntaxError(name ? "Expected a value" : "Expected a name");
+        }
+        if ((scope == NONEMPTY_ARRAY || scope == NONEMPTY_OBJECT) && !separated) {
+            throw syntaxError("Expected ','");
+        }
+        if (scope == NONEMPTY_DOCUMENT) {
+            throw syntaxError("Expected end of document");
+        }
+        switch (scope) {
+            case EMPTY_DOCUMENT:
+                scopes[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case EMPTY_ARRAY:
+                scopes[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                scopes[depth - 1] = DANGLING_NAME;
+                break;
+            case DANGLING_NAME:
+                scopes[depth - 1] = NONEMPTY_OBJECT;
+                break;
+        }
+        separated = false;
+    }
+    
+    private void endContainer(char close, int emptyScope, int nonEmptyScope) throws IOException {
+        peekElement();
+        int scope = scopes[depth - 1];
+        if (scope != emptyScope && scope != nonEmptyScope) {
+            throw syntaxError("Unexpected '" + close + "'");
+        }
+        expect(close);
+        depth--;
+    }
+    
+    private void push(int scope) {
+        if (depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        scopes[depth++] = scope;
+    }
+    
+    /**
+     * Skips whitespace, then returns the next character without consuming it.
+     */
+    private int peekToken() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c != -1 && Character.isWhitespace(c)) {
+                position++;
+            } else {
+                return c;
+            }
+        }
+    }
+    
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+    
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+    
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = reader.read(buffer, 0, buffer.length);
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+    
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (offset + position));
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+}
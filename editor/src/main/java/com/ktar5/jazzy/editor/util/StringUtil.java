@@ -28,4 +28,38 @@ public class StringUtil {
         return fileData.toString();
     }
     
+    /**
+     * @return the index of the first occurrence of the character between start (inclusive)
+     * and end (exclusive), or -1 if there is none
+     */
+    public static int indexOf(CharSequence sequence, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (sequence.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Parses a non-negative decimal integer from a section of a CharSequence
+     * without creating a String for it.
+     *
+     * @throws NumberFormatException if the section is empty or contains anything but digits
+     */
+    public static int parseInt(CharSequence sequence, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number");
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = sequence.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + sequence.subSequence(start, end) + "\"");
+            }
+            value = (value * 10) + digit;
+        }
+        return value;
+    }
+    
 }
@@ -4,8 +4,11 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import com.ktar5.jazzy.libgdx.properties.RootProperty;
 import com.ktar5.jazzy.libgdx.tileset.JazzyTileset;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 public abstract class JazzyMap implements Disposable {
     private JazzyMapLayers layers = new JazzyMapLayers();
     private RootProperty rootProperty = new RootProperty();
@@ -26,6 +29,30 @@ public abstract class JazzyMap implements Disposable {
         }
     }
     
+    /**
+     * Creates a JazzyMap from a map in the binary format.
+     */
+    public JazzyMap(JazzyMapReader reader) throws IOException {
+        JSONObject header = reader.readHeader();
+        rootProperty.deserialize(header.getJSONObject("properties"));
+        JSONArray layerHeaders = reader.getLayerHeaders();
+        for (int i = 0; i < layerHeaders.length(); i++) {
+            layers.add(createLayer(layerHeaders.getJSONObject(i), reader));
+        }
+    }
+    
+    /**
+     * Creates a layer of this map from a map in the binary format, usually by calling
+     * {@link JazzyMapLayer#JazzyMapLayer(JSONObject, JazzyMapReader)}.
+     * Maps have to override this to be loaded from the binary format.
+     *
+     * @param json   the serialization of the layer, without its cells
+     * @param reader the reader of the map, positioned at the cells of the layer
+     */
+    protected JazzyMapLayer createLayer(JSONObject json, JazzyMapReader reader) throws IOException {
+        throw new IOException(getClass().getName() + " doesn't override createLayer, so it can't be loaded from the binary format");
+    }
+    
     /**
      * @return collection of tilesets for this map.
      */
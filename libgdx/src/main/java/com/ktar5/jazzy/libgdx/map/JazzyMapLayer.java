@@ -4,7 +4,14 @@ import com.ktar5.jazzy.libgdx.tileset.JazzyTile;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 public abstract class JazzyMapLayer extends JazzyAbstractLayer {
+    /**
+     * Separates a block from its repeat count in a run-length encoded row
+     */
+    public static final char RUN_SEPARATOR = '*';
+    
     private int width;
     private int height;
     
@@ -23,27 +30,88 @@ public abstract class JazzyMapLayer extends JazzyAbstractLayer {
         this.loadProperties(json.getJSONObject("properties"));
         
         JSONArray grid = json.getJSONArray("tilemap");
-        String[][] blocks = new String[grid.length()][];
-        for (int i = 0; i < grid.length(); i++) {
-            blocks[i] = grid.getString(i).split(",");
+        for (int y = 0; y < Math.min(grid.length(), this.getHeight()); y++) {
+            /*
+            Note here that we store the data as an array of ROWS, and we load it as ROWS,
+            so the index in the array is the y-value and the position in the row is the x-value
+            See comments in BaseLayer#deserializeRow
+            Hence, data is stored "y-value, row string"
+            */
+            deserializeRow(grid.getString(y), y);
         }
-        for (int x = 0; x < this.getWidth(); x++) {
-            for (int y = 0; y < this.getHeight(); y++) {
-                /*
-                Note here that we switch the x and y variable because we store the data as
-                an array of ROWS, and we load it as ROWS, so the first-dimension array is the ROWS
-                and the 2nd dimension of the array is the COLUMNS
-                See comments in BaseTilemap#getJsonArray on the line with:
-                jsonArray.put(y, builder.toString());
-                Hence, data is stored "y-value, row string"
-                */
-                deserializeBlock(blocks[y][x], x, y);
+    }
+    
+    /**
+     * Splits a row into blocks, expanding run-length encoded blocks such as "0*8"
+     * into that many cells.
+     */
+    private void deserializeRow(String row, int y) {
+        int x = 0;
+        for (String block : row.split(",")) {
+            int run = block.indexOf(RUN_SEPARATOR);
+            if (run == -1) {
+                if (x < this.getWidth()) deserializeBlock(block, x, y);
+                x++;
+                continue;
+            }
+            String data = block.substring(0, run);
+            int end = Math.min(x + Integer.parseInt(block.substring(run + 1)), this.getWidth());
+            for (; x < end; x++) {
+                deserializeBlock(data, x, y);
             }
         }
     }
     
+    /**
+     * Creates a layer from a map in the binary format, reading its cells from the reader.
+     *
+     * @param json   the entry of {@link JazzyMapReader#getLayerHeaders()} for this layer
+     * @param reader the reader of the map, positioned at the cells of this layer
+     */
+    public JazzyMapLayer(JSONObject json, JazzyMapReader reader) throws IOException {
+        this.tileWidth = json.getJSONObject("dimensions").getInt("tileWidth");
+        this.tileHeight = json.getJSONObject("dimensions").getInt("tileHeight");
+        this.setName(json.getString("name"));
+        this.setVisible(json.getBoolean("visible"));
+        this.loadProperties(json.has("properties") ? json.getJSONObject("properties") : new JSONObject());
+        
+        reader.readCells(this);
+    }
+    
     protected abstract void deserializeBlock(String data, int x, int y);
     
+    /**
+     * This method is called for every non-empty cell of a map in the binary format, with the cell packed
+     * the way the editor stores it. By default it is unpacked as a whole tile, see
+     * {@link JazzyMapReader#blockIdOf(int)}, layers that pack their cells differently override it.
+     *
+     * @param value the packed cell
+     */
+    protected void deserializeCell(int value, int x, int y) {
+        deserializeCell(JazzyMapReader.blockIdOf(value), JazzyMapReader.directionOf(value), x, y);
+    }
+    
+    /**
+     * Called with every non-empty whole tile cell of a map in the binary format.
+     * By default it passes the cell to {@link #deserializeBlock(String, int, int)} in the same form
+     * as the json format, layers that read many cells can override it to skip building that string.
+     *
+     * @param blockId   the block id of the cell
+     * @param direction the direction of the cell, from 0 to 3
+     */
+    protected void deserializeCell(int blockId, int direction, int x, int y) {
+        deserializeBlock(direction == 0 ? String.valueOf(blockId) : blockId + "_" + direction, x, y);
+    }
+    
+    /**
+     * Sets the size of the layer in tiles, clearing all of its tiles.
+     */
+    void setDimensions(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.tiles = new JazzyTile[width][height];
+    }
+    
     /**
      * @return map's width in tiles
      */
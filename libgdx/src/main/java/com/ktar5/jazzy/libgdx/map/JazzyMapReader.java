@@ -0,0 +1,200 @@
+package com.ktar5.jazzy.libgdx.map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads maps saved by the editor in its binary format. A file is laid out as:
+ * <pre>
+ * magic    4 bytes, "JZMP"
+ * version  varint
+ * header   json value, the map serialization with the "tilemap" section of every layer left out
+ * layers   for every entry of the "layers" array in the header:
+ *              columns    varint
+ *              rows       varint
+ *              chunkShift varint, chunks are 2^chunkShift cells per side
+ *              chunks     for every chunk, row by row:
+ *                             size varint, the amount of bytes that follow, 0 for an empty chunk
+ *                             runs (length varint, value varint) pairs, in row-major order within
+ *                                  the chunk, covering every cell of the chunk that is inside the layer
+ * </pre>
+ * Version 1 files stored the runs of a whole layer after its columns and rows, without chunks.
+ * Keep this in sync with BinaryTilemapFormat in the editor module.
+ */
+public class JazzyMapReader implements Closeable {
+    public static final int MAGIC = ('J' << 24) | ('Z' << 16) | ('M' << 8) | 'P';
+    public static final int VERSION = 2;
+    
+    private static final int TAG_NULL = 0, TAG_FALSE = 1, TAG_TRUE = 2, TAG_INT = 3, TAG_LONG = 4,
+            TAG_DOUBLE = 5, TAG_STRING = 6, TAG_OBJECT = 7, TAG_ARRAY = 8;
+    
+    private final DataInputStream input;
+    private JSONObject header;
+    private int version;
+    
+    public JazzyMapReader(InputStream input) {
+        this.input = new DataInputStream(new BufferedInputStream(input));
+    }
+    
+    /**
+     * Reads the header of the map, this must be called before any layer is read.
+     *
+     * @return the json serialization of the map, with the "tilemap" section of every layer left out
+     */
+    public JSONObject readHeader() throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a binary jazzy map");
+        }
+        version = readVarInt();
+        if (version > VERSION) {
+            throw new IOException("Map was saved in format version " + version + ", but only versions up to " + VERSION + " are supported");
+        }
+        Object json = readJson();
+        if (!(json instanceof JSONObject)) {
+            throw new IOException("Malformed map header");
+        }
+        header = (JSONObject) json;
+        return header;
+    }
+    
+    /**
+     * @return the serialization of every layer, in the order their cells are stored
+     */
+    public JSONArray getLayerHeaders() {
+        if (header == null) {
+            throw new IllegalStateException("The header must be read before the layers");
+        }
+        return header.has("layers") ? header.getJSONArray("layers") : new JSONArray();
+    }
+    
+    /**
+     * Reads the cells of the next layer into the given layer, which must have been created
+     * from the matching entry of {@link #getLayerHeaders()}. Empty cells are skipped.
+     */
+    public void readCells(JazzyMapLayer layer) throws IOException {
+        int columns = readVarInt(), rows = readVarInt();
+        layer.setDimensions(columns, rows);
+        
+        if (version == 1) {
+            readRuns(layer, 0, 0, columns, rows);
+            return;
+        }
+        
+        int chunkShift = readVarInt();
+        if (chunkShift > 15) {
+            throw new IOException("Malformed chunks of size 2^" + chunkShift + " in layer: " + layer.getName());
+        }
+        int size = 1 << chunkShift;
+        for (int chunkY = 0; chunkY < rows; chunkY += size) {
+            for (int chunkX = 0; chunkX < columns; chunkX += size) {
+                if (readVarInt() != 0) {
+                    readRuns(layer, chunkX, chunkY, Math.min(size, columns - chunkX), Math.min(size, rows - chunkY));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads the runs that cover the given area of the layer, in row-major order.
+     */
+    private void readRuns(JazzyMapLayer layer, int startX, int startY, int width, int height) throws IOException {
+        int total = width * height;
+        for (int index = 0; index < total; ) {
+            int length = readVarInt(), value = readVarInt();
+            if (length <= 0 || length > total - index) {
+                throw new IOException("Malformed run of " + length + " cells in layer: " + layer.getName());
+            }
+            if (value != 0) {
+                for (int i = index; i < index + length; i++) {
+                    layer.deserializeCell(value, startX + (i % width), startY + (i / width));
+                }
+            }
+            index += length;
+        }
+    }
+    
+    /**
+     * Whole tile layers of the editor pack a cell as its block id followed by two bits of direction,
+     * other layers pack their cells in their own way.
+     *
+     * @return the block id of a packed whole tile cell
+     */
+    public static int blockIdOf(int value) {
+        return value >>> 2;
+    }
+    
+    /**
+     * @return the direction of a packed cell, from 0 to 3
+     */
+    public static int directionOf(int value) {
+        return value & 3;
+    }
+    
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private Object readJson() throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return JSONObject.NULL;
+            case TAG_FALSE:
+                return false;
+            case TAG_TRUE:
+                return true;
+            case TAG_INT:
+                return input.readInt();
+            case TAG_LONG:
+                return input.readLong();
+            case TAG_DOUBLE:
+                return input.readDouble();
+            case TAG_STRING:
+                return readString();
+            case TAG_OBJECT: {
+                JSONObject json = new JSONObject();
+                for (int i = readVarInt(); i > 0; i--) {
+                    String key = readString();
+                    json.put(key, readJson());
+                }
+                return json;
+            }
+            case TAG_ARRAY: {
+                JSONArray json = new JSONArray();
+                for (int i = readVarInt(); i > 0; i--) {
+                    json.put(readJson());
+                }
+                return json;
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+    
+}
@@ -43,6 +43,46 @@ public class SidedTile extends Tile<SidedTileset> {
         }
     }
     
+    /**
+     * Creates a tile from a value produced by {@link #pack()}.
+     */
+    public SidedTile(SidedTileset tileset, int packed) {
+        this(tileset);
+        for (Side side : Side.values()) {
+            int baseId = unpackSide(packed, side);
+            if (baseId != 0) {
+                setSide(side, baseId);
+            }
+        }
+    }
+    
+    /**
+     * Packs the base id of every side into a single int so that the tile can be kept in a layer's storage.
+     * Each side gets 8 bits, in the order of {@link Side#values()}.
+     */
+    public int pack() {
+        int packed = 0;
+        for (Side side : Side.values()) {
+            packed = withSide(packed, side, side.getValue(this));
+        }
+        return packed;
+    }
+    
+    /**
+     * @return the packed tile with the base id of one side replaced, 0 removes the side
+     */
+    public static int withSide(int packed, Side side, int baseId) {
+        if (baseId < 0 || baseId > 0xFF) {
+            throw new RuntimeException("Base id " + baseId + " of side " + side + " can't be packed");
+        }
+        int shift = side.ordinal() * 8;
+        return (packed & ~(0xFF << shift)) | (baseId << shift);
+    }
+    
+    public static int unpackSide(int packed, Side side) {
+        return (packed >>> (side.ordinal() * 8)) & 0xFF;
+    }
+    
     public void setSide(Side side, int baseId) {
         if (baseId == 0) {
             throw new RuntimeException("Use remove instead");
@@ -62,7 +102,8 @@ public class SidedTile extends Tile<SidedTileset> {
         tileparts[corner].setData(data);
         tileparts[corner].setBaseId(id);
         System.out.println("Image view isnt null. ID: " + (((id - 1) * 3) + data.ordinal() - 1));
-        tileparts[corner].getImageView().setImage(getTileset().getTileImages().get(((id - 1) * 3) + data.ordinal() - 1));
+        tileparts[corner].getImageView().setImage(getTileset().getAtlas());
+        tileparts[corner].getImageView().setViewport(getTileset().getTileViewport(((id - 1) * 3) + data.ordinal() - 1));
         tileparts[corner].getImageView().setRotate(90 * corner);
     }
     
@@ -76,7 +117,8 @@ public class SidedTile extends Tile<SidedTileset> {
         int i = data.ordinal();
         if (i >= 3) i = 3;
         System.out.println("Image view isnt null. ID: " + (((id - 1) * 3) + i - 1));
-        tileparts[corner].getImageView().setImage(getTileset().getTileImages().get(((id - 1) * 3) + i - 1));
+        tileparts[corner].getImageView().setImage(getTileset().getAtlas());
+        tileparts[corner].getImageView().setViewport(getTileset().getTileViewport(((id - 1) * 3) + i - 1));
         tileparts[corner].getImageView().setRotate(facing.ordinal() * 90);
     }
     
@@ -0,0 +1,131 @@
+package com.ktar5.jazzy.plugins.sidedtilemap;
+
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import com.ktar5.jazzy.editor.util.StringUtil;
+import com.ktar5.jazzy.plugins.sidedtilemap.SidedTile.Side;
+import javafx.scene.canvas.GraphicsContext;
+import org.json.JSONObject;
+
+/**
+ * A layer of sided tiles. Every cell packs the base id of its four sides, see {@link SidedTile#pack()},
+ * and the pieces in its corners follow from those sides, so only the sides are stored and edited.
+ */
+public class SidedTileLayer extends BaseLayer {
+    //Every base id has three tiles in the tileset: an inner corner, an outer corner and a side
+    private static final int OUTER_CORNER_PIECE = SidedTile.Data.OUTER_CORNER.ordinal() - 1;
+    private static final int SIDE_PIECE = SidedTile.Data.UP_SIDE.ordinal() - 1;
+    
+    public SidedTileLayer(BaseTilemap parent, JSONObject json) {
+        super(parent, json);
+    }
+    
+    public SidedTileLayer(BaseTilemap parent, String name, boolean visible, int tileHeight, int tileWidth, int xOffset, int yOffset, int xPadding, int yPadding) {
+        super(parent, name, visible, tileHeight, tileWidth, xOffset, yOffset, xPadding, yPadding);
+    }
+    
+    public SidedTileset getTileset() {
+        return ((SidedTilemap) getParent()).getTileset();
+    }
+    
+    @Override
+    public int deserializeBlock(CharSequence row, int start, int end) {
+        //Same format as SidedTile#serialize, "0" for a cell without sides
+        if (end - start <= 1 || row.charAt(start) != '[') {
+            return LayerStorage.EMPTY;
+        }
+        int packed = LayerStorage.EMPTY, sideStart = start + 1;
+        for (Side side : Side.values()) {
+            int sideEnd = side == Side.LEFT ? end - 1 : StringUtil.indexOf(row, '/', sideStart, end - 1);
+            packed = SidedTile.withSide(packed, side, StringUtil.parseInt(row, sideStart, sideEnd));
+            sideStart = sideEnd + 1;
+        }
+        return packed;
+    }
+    
+    @Override
+    protected void serializeBlock(int value, StringBuilder builder) {
+        if (value == LayerStorage.EMPTY) {
+            builder.append('0');
+            return;
+        }
+        builder.append('[');
+        for (Side side : Side.values()) {
+            if (side != Side.UP) {
+                builder.append('/');
+            }
+            builder.append(SidedTile.unpackSide(value, side));
+        }
+        builder.append(']');
+    }
+    
+    @Override
+    protected SidedTile createTile(int value) {
+        return new SidedTile(getTileset(), value);
+    }
+    
+    @Override
+    protected void paintCell(GraphicsContext graphics, int value, double x, double y) {
+        SidedTileset tileset = getTileset();
+        if (tileset == null) {
+            return;
+        }
+        //Every corner is a quarter of the cell, painted from the sides on either side of it like SidedTile#refreshSide
+        double width = getTileWidth() / 2d, height = getTileHeight() / 2d;
+        for (Side side : Side.values()) {
+            int baseId = SidedTile.unpackSide(value, side), nextId = SidedTile.unpackSide(value, side.next());
+            Side facing = side;
+            int piece;
+            if (baseId != 0 && baseId == nextId) {
+                piece = OUTER_CORNER_PIECE;
+            } else if (baseId != 0) {
+                //Sides with different bases can't share a corner, the corner keeps the first of them
+                piece = SIDE_PIECE;
+            } else if (nextId != 0) {
+                facing = side.next();
+                baseId = nextId;
+                piece = SIDE_PIECE;
+            } else {
+                continue;
+            }
+            
+            SidedTile.Corner corner = SidedTile.Corner.values()[side.rightCorner()];
+            graphics.save();
+            graphics.translate(x + (corner.x * width) + (width / 2), y + (corner.y * height) + (height / 2));
+            graphics.rotate(90 * facing.ordinal());
+            tileset.drawTile(graphics, ((baseId - 1) * 3) + piece, -width / 2, -height / 2, width, height);
+            graphics.restore();
+        }
+    }
+    
+    /**
+     * Sets one side of a cell to the given base, keeping its other sides.
+     */
+    public void setSide(int x, int y, Side side, int baseId) {
+        int value = SidedTile.withSide(getCell(x, y), side, baseId);
+        if (setCell(x, y, value) != value) {
+            getParent().setChanged(true);
+        }
+    }
+    
+    /**
+     * Clears one side of a cell, the cell is empty once it has no sides left.
+     */
+    public void removeSide(int x, int y, Side side) {
+        setSide(x, y, side, 0);
+    }
+    
+    /**
+     * Replaces the cell at the given position, and every cell connected to it with the same sides,
+     * with a cell that has the given base on every side, see {@link #floodFill(int, int, int)}.
+     */
+    public void fillSides(int x, int y, int baseId) {
+        int packed = LayerStorage.EMPTY;
+        for (Side side : Side.values()) {
+            packed = SidedTile.withSide(packed, side, baseId);
+        }
+        floodFill(x, y, packed);
+    }
+    
+}
@@ -2,36 +2,43 @@ package com.ktar5.jazzy.plugins.sidedtilemap;
 
 import com.ktar5.jazzy.editor.coordination.EditorCoordinator;
 import com.ktar5.jazzy.editor.gui.centerview.tabs.TilemapTab;
-import com.ktar5.jazzy.editor.gui.utils.PixelatedImageView;
-import com.ktar5.jazzy.editor.tilemaps.BaseTilemap;
-import com.ktar5.jazzy.editor.tilemaps.sided.SidedTile.Side;
-import com.ktar5.jazzy.editor.tilemaps.whole.WholeTile;
-import com.ktar5.jazzy.editor.tileset.TilesetManager;
+import com.ktar5.jazzy.editor.tilemap.BaseLayer;
+import com.ktar5.jazzy.editor.tilemap.BaseTilemap;
+import com.ktar5.jazzy.editor.tilemap.storage.LayerStorage;
+import com.ktar5.jazzy.plugins.sidedtilemap.SidedTile.Side;
 import com.ktar5.utilities.annotation.callsuper.CallSuper;
-import javafx.scene.Node;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Polygon;
+import lombok.Getter;
 import org.json.JSONObject;
 
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
-public class SidedTilemap extends BaseTilemap<SidedTileset> {
+/**
+ * A tilemap of {@link SidedTileLayer}s. Edits go to the top layer, and are stored as packed cells like
+ * every other layer, so they are saved by chunk, undone with the undo history and flood filled.
+ */
+public class SidedTilemap extends BaseTilemap {
     int currentId = 1;
     private int previousX = -1, previousY = -1;
     private Side previousSide = Side.UP;
     private Polygon triangle;
+    @Getter
+    private SidedTileset tileset;
     
     public SidedTilemap(File saveFile, JSONObject json) {
         super(saveFile, json);
+        loadTilesetIfExists(json);
     }
     
     public SidedTilemap(File saveFile, int width, int height, int tileWidth, int tileHeight) {
-        super(saveFile, width, height, tileWidth, tileHeight);
+        super(saveFile, width, height);
+        getLayers().add(new SidedTileLayer(this, "Sides", true, tileHeight, tileWidth, 0, 0, 0, 0));
     }
     
     @Override
@@ -40,39 +47,51 @@ public class SidedTilemap extends BaseTilemap<SidedTileset> {
     }
     
     @Override
-    public void deserializeBlock(String block, int x, int y) {
-        if (block.length() != 1) {
-            this.grid[x][y] = new SidedTile(getTileset(), block);
-        }
+    protected BaseLayer deserializeLayer(JSONObject json) {
+        return new SidedTileLayer(this, json);
     }
-
-    @Override
+    
     protected void loadTilesetIfExists(JSONObject json) {
         if (json.has("tileset")) {
             File tileset = Paths.get(getSaveFile().getPath()).resolve(json.getString("tileset")).toFile();
-            SidedTileset tileset1 = TilesetManager.get().loadTileset(tileset, SidedTileset.class);
-            this.setTileset(tileset1);
+            //Held by the map until it's closed, like the tilesets of whole tile maps
+            this.tileset = getTilesets().acquire(tileset, SidedTileset.class);
         }
     }
     
+    /**
+     * @return the layer that is edited, which is the top one
+     */
+    private SidedTileLayer getEditedLayer() {
+        return (SidedTileLayer) getLayers().get(getLayers().size() - 1);
+    }
+    
     @Override
     public void onClick(MouseEvent event) {
         if (getTileset() == null) {
             return;
         }
-        int x = (int) (event.getX() / this.getTileWidth());
-        int y = (int) (event.getY() / this.getTileHeight());
-        
-        double xRemainder = (event.getX() / (double) this.getTileWidth()) - x;
-        double yRemainder = (event.getY() / (double) this.getTileHeight()) - y;
-        Side side = Side.fromRemainders(xRemainder, yRemainder);
+        SidedTileLayer layer = getEditedLayer();
+        int x = (int) (event.getX() / layer.getTileWidth());
+        int y = (int) (event.getY() / layer.getTileHeight());
+        if (x >= layer.getColumns() || y >= layer.getRows() || x < 0 || y < 0) {
+            return;
+        }
+        Side side = getSide(event, layer, x, y);
         
+        //Shift makes a click fill the whole area under it, like a bucket
         if (event.getButton().equals(MouseButton.PRIMARY)) {
-            leftClick(event, x, y, side);
+            if (event.isShiftDown()) {
+                layer.fillSides(x, y, currentId);
+            } else {
+                layer.setSide(x, y, side, currentId);
+            }
         } else if (event.getButton().equals(MouseButton.SECONDARY)) {
-            rightClick(event, x, y, side);
-        } else if (event.getButton().equals(MouseButton.MIDDLE)) {
-            middleClick(event, x, y, side);
+            if (event.isShiftDown()) {
+                layer.floodFill(x, y, LayerStorage.EMPTY);
+            } else {
+                layer.removeSide(x, y, side);
+            }
         }
     }
     
@@ -81,18 +100,15 @@ public class SidedTilemap extends BaseTilemap<SidedTileset> {
         if (getTileset() == null) {
             return;
         }
+        SidedTileLayer layer = getEditedLayer();
+        int x = (int) (event.getX() / layer.getTileWidth());
+        int y = (int) (event.getY() / layer.getTileHeight());
         
-        int x = (int) (event.getX() / this.getTileWidth());
-        int y = (int) (event.getY() / this.getTileHeight());
-        
-        if (x >= getWidth() || y >= getHeight() || x < 0 || y < 0) {
+        if (x >= layer.getColumns() || y >= layer.getRows() || x < 0 || y < 0) {
             return;
         }
         
-        double xRemainder = (event.getX() / (double) this.getTileWidth()) - x;
-        double yRemainder = (event.getY() / (double) this.getTileHeight()) - y;
-        Side side = Side.fromRemainders(xRemainder, yRemainder);
-        
+        Side side = getSide(event, layer, x, y);
         if (x == previousX && y == previousY && side == previousSide) {
             return;
         }
@@ -101,131 +117,54 @@ public class SidedTilemap extends BaseTilemap<SidedTileset> {
         previousY = y;
         previousSide = side;
         
-        refreshHighlight(x, y, side);
+        refreshHighlight(layer, x, y, side);
         
         if (event.getButton().equals(MouseButton.PRIMARY)) {
-            leftClick(event, x, y, side);
+            layer.setSide(x, y, side, currentId);
         } else if (event.getButton().equals(MouseButton.SECONDARY)) {
-            rightClick(event, x, y, side);
+            layer.removeSide(x, y, side);
         }
     }
     
     @Override
     public void onDragStart(MouseEvent event) {
+        super.onDragStart(event);
         onDrag(event);
     }
     
     @Override
     public void onMove(MouseEvent event) {
-        int x = (int) (event.getX() / this.getTileWidth());
-        int y = (int) (event.getY() / this.getTileHeight());
+        SidedTileLayer layer = getEditedLayer();
+        int x = (int) (event.getX() / layer.getTileWidth());
+        int y = (int) (event.getY() / layer.getTileHeight());
         
-        if (x >= getWidth() || y >= getHeight() || x < 0 || y < 0) return;
-        
-        double xRemainder = (event.getX() / (double) this.getTileWidth()) - x;
-        double yRemainder = (event.getY() / (double) this.getTileHeight()) - y;
-        Side side = Side.fromRemainders(xRemainder, yRemainder);
+        if (x >= layer.getColumns() || y >= layer.getRows() || x < 0 || y < 0) return;
         
+        Side side = getSide(event, layer, x, y);
         if (x == previousX && y == previousY && side == previousSide) return;
         
         previousX = x;
         previousY = y;
         previousSide = side;
         
-        refreshHighlight(x, y, side);
-    }
-    
-    public void leftClick(MouseEvent event, int x, int y, Side side) {
-        Node node = event.getPickResult().getIntersectedNode();
-        if (node == null || !(node instanceof PixelatedImageView)) {
-            set(x, y, side);
-        } else if (this.grid[x][y] instanceof WholeTile) {
-            WholeTile tile = ((WholeTile) this.grid[x][y]);
-            tile.setBlockId(tile.getBlockId() + 1);
-            tile.updateAllImageViews();
-        } else if (this.grid[x][y] instanceof SidedTile) {
-            set(x, y, side);
-        }
-    }
-    
-    public void rightClick(MouseEvent event, int x, int y, Side corner) {
-        if (this.grid[x][y] instanceof WholeTile) {
-            remove(x, y);
-        } else if (this.grid[x][y] instanceof SidedTile) {
-            remove(x, y, corner);
-        }
+        refreshHighlight(layer, x, y, side);
     }
     
-    public void middleClick(MouseEvent event, int x, int y, Side corner) {
-//        Node node = event.getPickResult().getIntersectedNode();
-//        if (node != null && node instanceof PixelatedImageView) {
-//            WholeTile wholeTile = (WholeTile) this.grid[x][y];
-//            wholeTile.setDirection((wholeTile.getDirection() + 1) % 4);
-//            wholeTile.updateAllImageViews();
-//        }
+    private static Side getSide(MouseEvent event, SidedTileLayer layer, int x, int y) {
+        double xRemainder = (event.getX() / (double) layer.getTileWidth()) - x;
+        double yRemainder = (event.getY() / (double) layer.getTileHeight()) - y;
+        return Side.fromRemainders(xRemainder, yRemainder);
     }
     
     @Override
     public void draw(Pane pane) {
-        for (int y = getHeight() - 1; y >= 0; y--) {
-            for (int x = 0; x <= getWidth() - 1; x++) {
-                if (grid[x][y] == null) {
-                    continue;
-                }
-                grid[x][y].draw(pane, x * getTileWidth(), y * getTileHeight());
-            }
-        }
-    }
-    
-    public void set(int x, int y, Side side) {
-        SidedTile tile;
-        if (grid[x][y] != null && grid[x][y] instanceof SidedTile) {
-            tile = (SidedTile) grid[x][y];
-            tile.setSide(side, currentId);
-        } else {
-            tile = new SidedTile(getTileset());
-            tile.setSide(side, currentId);
-            this.grid[x][y] = tile;
-            refreshTile(x, y);
-        }
-    }
-    
-    public void set(int x, int y, WholeTile tile) {
-        remove(x, y);
-        this.grid[x][y] = tile;
-        refreshTile(x, y);
-    }
-    
-    private void refreshTile(int x, int y) {
-        if (this.grid[x][y] == null) {
-            return;
-        }
-        Pane pane = EditorCoordinator.get().getEditor().getTabDrawingPane(getId());
-        this.grid[x][y].draw(pane, x * getTileWidth(), y * getTileHeight());
-        setChanged(true);
-    }
-    
-    public void remove(int x, int y) {
-        if (grid[x][y] == null) {
-            return;
-        }
-        this.grid[x][y].remove(EditorCoordinator.get().getEditor().getTabDrawingPane(getId()));
-        this.grid[x][y] = null;
-        setChanged(true);
-    }
-    
-    public void remove(int x, int y, Side side) {
-        if (grid[x][y] == null || !(grid[x][y] instanceof SidedTile)) {
-            return;
-        }
-        ((SidedTile) grid[x][y]).removeSide(side);
-        setChanged(true);
+        getLayers().draw(pane);
     }
     
     @Override
     @CallSuper
-    public JSONObject serialize() {
-        final JSONObject json = super.serialize();
+    public JSONObject serializeHeader() {
+        final JSONObject json = super.serializeHeader();
         if (this.getTileset() != null) {
             Path path = Paths.get(this.getSaveFile().getPath())
                     .relativize(Paths.get(this.getTileset().getSaveFile().getPath()));
@@ -234,18 +173,18 @@ public class SidedTilemap extends BaseTilemap<SidedTileset> {
         return json;
     }
     
-    private void refreshHighlight(int x, int y, Side side) {
+    private void refreshHighlight(SidedTileLayer layer, int x, int y, Side side) {
         if (triangle == null) {
             triangle = new Polygon(0, 0,
-                    this.getTileWidth() / 2, this.getTileHeight() / 2,
-                    this.getTileWidth(), 0);
+                    layer.getTileWidth() / 2, layer.getTileHeight() / 2,
+                    layer.getTileWidth(), 0);
             triangle.setFill(Color.AQUA.deriveColor(0, 1, 1, .5f));
             EditorCoordinator.get().getEditor().getTabDrawingPane(getId()).getChildren().add(triangle);
         }
         triangle.toFront();
         triangle.setRotate(90 * side.ordinal());
-        triangle.setTranslateX(x * this.getTileWidth() + (this.getTileWidth() * side.x));
-        triangle.setTranslateY(y * this.getTileHeight() + (this.getTileHeight() * side.y));
+        triangle.setTranslateX(x * layer.getTileWidth() + (layer.getTileWidth() * side.x));
+        triangle.setTranslateY(y * layer.getTileHeight() + (layer.getTileHeight() * side.y));
     }
     
     public void setCurrentData(int id) {
@@ -2,13 +2,10 @@ package com.ktar5.jazzy.plugins.sidedtilemap;
 
 import com.ktar5.jazzy.editor.gui.utils.TilesetImageView;
 import com.ktar5.jazzy.editor.tileset.BaseTileset;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import org.json.JSONObject;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 
 public class SidedTileset extends BaseTileset {
@@ -20,26 +17,6 @@ public class SidedTileset extends BaseTileset {
         super(sourceFile, saveFile, paddingVertical, paddingHorizontal, offsetLeft, offsetUp, tileWidth, tileHeight);
     }
     
-    @Override
-    public void getTilesetImages(BufferedImage image) {
-        int index = 0;
-        
-        int columns = (image.getWidth() - getOffsetLeft()) / (getTileWidth() + getPaddingHorizontal());
-        int rows = (image.getHeight() - getOffsetUp()) / (getTileHeight() + getPaddingVertical());
-        
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                BufferedImage subImage = image.getSubimage(
-                        getOffsetLeft() + ((getPaddingHorizontal() + getTileWidth()) * col),
-                        getOffsetUp() + ((getPaddingVertical() + getTileHeight()) * row),
-                        getTileWidth(), getTileHeight());
-                subImage = scale(subImage, SCALE);
-                final WritableImage writableImage = SwingFXUtils.toFXImage(subImage, null);
-                this.getTileImages().put(index++, writableImage);
-            }
-        }
-    }
-    
     @Override
     public void onClick(MouseEvent event) {
     
@@ -57,7 +34,7 @@ public class SidedTileset extends BaseTileset {
     
     @Override
     public void draw(Pane pane) {
-        for (int i = 0; i < this.getTileImages().size; i++) {
+        for (int i = 0; i < this.getTileCount(); i++) {
             TilesetImageView iv = new TilesetImageView(this, i);
             iv.setVisible(true);
             iv.setTranslateX(((i % getColumns()) * (this.getTileWidth())));
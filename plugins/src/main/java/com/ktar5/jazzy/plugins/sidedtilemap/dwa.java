@@ -1,7 +1,5 @@
 package com.ktar5.jazzy.plugins.sidedtilemap;
 
-import javafx.scene.image.Image;
-
 import java.util.UUID;
 
 @Listener
@@ -15,8 +13,7 @@ public static class SidedTilemapTab extends TilemapTab {
     public void onSelectTile(TileSelectEvent event) {
         if (event.getTab().equals(this.getTabId())) {
             System.out.println("select");
-            Image image = event.getTileset().getTileImages().get(event.getId());
-            getTilesetSidebar().getSelectedTileView().setTile(new PixelatedImageView(image));
+            getTilesetSidebar().getSelectedTileView().setTile(new TilesetImageView(event.getTileset(), event.getId()));
             SidedTilemap tilemap = ((SidedTilemap) getTabbable());
             System.out.println((event.getId() / 3) + 1);
             tilemap.setCurrentData((event.getId() / 3) + 1);